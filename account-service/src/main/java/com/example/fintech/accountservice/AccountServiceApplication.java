@@ -8,15 +8,19 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.ApplicationContext;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 @EntityScan("com.example.fintech.common.entity")
 @EnableJpaRepositories("com.example.fintech.accountservice.repository")
 @ComponentScan(basePackages = {
         "com.example.fintech.accountservice",
         "com.example.fintech.common.service",
         "com.example.fintech.common.config",
-        "com.example.fintech.common.saga"
+        "com.example.fintech.common.saga",
+        "com.example.fintech.common.outbox",
+        "com.example.fintech.common.dedupe"
 })
 public class AccountServiceApplication {
 
@@ -0,0 +1,37 @@
+package com.example.fintech.accountservice.cache;
+
+import com.example.fintech.accountservice.service.BalanceSlotService;
+import com.example.fintech.common.config.RabbitMQConfig;
+import com.example.fintech.common.event.AccountBalanceEvent;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class AccountCacheInvalidationListener {
+
+    @Autowired
+    private AccountSnapshotCache accountSnapshotCache;
+
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+
+    // 每个实例一个匿名队列（广播），失效消息丢失时由TTL兜底，因此自动确认即可
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = RabbitMQConfig.ACCOUNT_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = RabbitMQConfig.BALANCE_ROUTING_KEY),
+            ackMode = "AUTO")
+    public void onBalanceChanged(AccountBalanceEvent event) {
+        if (event.getAccountNumber() != null) {
+            accountSnapshotCache.evict(event.getAccountNumber());
+            if (BalanceSlotService.SLOTS_ENABLED_OPERATION.equals(event.getOperation())) {
+                balanceSlotService.refreshSlots(event.getAccountNumber());
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.fintech.accountservice.cache;
+
+import com.example.fintech.common.entity.Account;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable copy of the account fields needed on read paths. Cached instead of the JPA entity
+ * so callers can never mutate or re-attach a shared object.
+ */
+public class AccountSnapshot {
+    private final String accountNumber;
+    private final Long userId;
+    private final String accountType;
+    private final String currency;
+    private final String status;
+    private final BigDecimal balance;
+    private final BigDecimal heldBalance;
+
+    public AccountSnapshot(String accountNumber, Long userId, String accountType,
+                           String currency, String status, BigDecimal balance, BigDecimal heldBalance) {
+        this.accountNumber = accountNumber;
+        this.userId = userId;
+        this.accountType = accountType;
+        this.currency = currency;
+        this.status = status;
+        this.balance = balance;
+        this.heldBalance = heldBalance;
+    }
+
+    public static AccountSnapshot from(Account account) {
+        return new AccountSnapshot(account.getAccountNumber(), account.getUserId(), account.getAccountType(),
+                account.getCurrency(), account.getStatus(), account.getBalance(),
+                account.getHeldBalance() == null ? BigDecimal.ZERO : account.getHeldBalance());
+    }
+
+    public String getAccountNumber() { return accountNumber; }
+    public Long getUserId() { return userId; }
+    public String getAccountType() { return accountType; }
+    public String getCurrency() { return currency; }
+    public String getStatus() { return status; }
+    public BigDecimal getBalance() { return balance; }
+    public BigDecimal getHeldBalance() { return heldBalance; }
+}
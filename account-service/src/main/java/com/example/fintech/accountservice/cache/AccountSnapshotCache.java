@@ -0,0 +1,80 @@
+package com.example.fintech.accountservice.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded read-through cache of account snapshots.
+ *
+ * Local writes evict after commit; writes on other instances arrive through the
+ * AccountBalanceEvent stream (see {@link AccountCacheInvalidationListener}). The TTL bounds
+ * staleness if an event is lost.
+ */
+@Component
+public class AccountSnapshotCache {
+
+    @Value("${account.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${account.cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    private Cache<String, AccountSnapshot> cache;
+
+    private final LongAdder invalidations = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    public AccountSnapshot get(String accountNumber, Supplier<AccountSnapshot> loader) {
+        return cache.get(accountNumber, key -> loader.get());
+    }
+
+    public void evict(String accountNumber) {
+        cache.invalidate(accountNumber);
+        invalidations.increment();
+    }
+
+    // 在事务内修改余额时，提交前其他线程仍可能把旧值读回缓存，因此提交后再清一次
+    public void evictAfterCommit(String accountNumber) {
+        evict(accountNumber);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(accountNumber);
+                }
+            });
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", cache.estimatedSize());
+        metrics.put("hits", stats.hitCount());
+        metrics.put("misses", stats.missCount());
+        metrics.put("hitRate", stats.hitRate());
+        metrics.put("evictions", stats.evictionCount());
+        metrics.put("invalidations", invalidations.sum());
+        return metrics;
+    }
+}
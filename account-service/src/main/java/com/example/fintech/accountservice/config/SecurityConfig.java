@@ -2,6 +2,7 @@ package com.example.fintech.accountservice.config;
 
 import com.example.fintech.accountservice.filter.UserContextFilter;
 import com.example.fintech.common.config.BaseSecurityConfig;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -23,6 +24,8 @@ public class SecurityConfig extends BaseSecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         // 公共端点
                         .requestMatchers(getPublicEndpoints()).permitAll()
+                        // 异步请求的二次分发，原始请求已经过鉴权
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // 测试端点 - 最高优先级
                         .requestMatchers("/api/test/**").permitAll()
                         // 其他请求需要认证
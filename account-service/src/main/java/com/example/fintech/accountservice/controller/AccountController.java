@@ -1,9 +1,12 @@
 package com.example.fintech.accountservice.controller;
 
+import com.example.fintech.accountservice.cache.AccountSnapshot;
+import com.example.fintech.accountservice.idempotency.IdempotencyService;
 import com.example.fintech.common.context.UserContext;
 import com.example.fintech.common.dto.*;
 import com.example.fintech.common.entity.Account;
 import com.example.fintech.accountservice.service.AccountService;
+import com.example.fintech.accountservice.service.BatchTransferService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -19,6 +22,12 @@ public class AccountController {
     @Autowired
     private AccountService accountService;
 
+    @Autowired
+    private BatchTransferService batchTransferService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @PostMapping("/create")
     public ResponseEntity<?> createAccount(
             @RequestParam("accountType") String accountType,
@@ -69,7 +78,7 @@ public class AccountController {
         }
 
         try {
-            Account account = accountService.getAccountByAccountNumber(accountNumber);
+            AccountSnapshot account = accountService.getAccountSnapshot(accountNumber);
 
             // Verify ownership using userId stored in account
             if (!account.getUserId().equals(userInfo.getUserId())) {
@@ -79,7 +88,8 @@ public class AccountController {
 
             return ResponseEntity.ok(Map.of(
                     "accountNumber", account.getAccountNumber(),
-                    "balance", account.getBalance(),
+                    "balance", accountService.getBalance(accountNumber),
+                    "heldBalance", account.getHeldBalance(),
                     "currency", account.getCurrency()
             ));
         } catch (Exception e) {
@@ -88,63 +98,100 @@ public class AccountController {
     }
 
     @PostMapping("/deposit")
-    public ResponseEntity<?> deposit(@RequestBody DepositRequest request) {
+    public ResponseEntity<?> deposit(@RequestBody DepositRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         UserContext.UserInfo userInfo = UserContext.getUser();
         if (userInfo == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body("User context not found");
         }
 
-        try {
-            accountService.deposit(
-                    request.getAccountNumber(),
-                    request.getAmount(),
-                    userInfo.getUserId()
-            );
-            return ResponseEntity.ok(Map.of("message", "Deposit successful"));
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        }
+        return idempotencyService.execute(userInfo.getUserId(), idempotencyKey, "deposit", request, () -> {
+            try {
+                accountService.deposit(
+                        request.getAccountNumber(),
+                        request.getAmount(),
+                        userInfo.getUserId()
+                );
+                return ResponseEntity.ok(Map.of("message", "Deposit successful"));
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
     }
 
     @PostMapping("/withdraw")
-    public ResponseEntity<?> withdraw(@RequestBody WithdrawRequest request) {
+    public ResponseEntity<?> withdraw(@RequestBody WithdrawRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         UserContext.UserInfo userInfo = UserContext.getUser();
         if (userInfo == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body("User context not found");
         }
 
-        try {
-            accountService.withdraw(
-                    request.getAccountNumber(),
-                    request.getAmount(),
-                    userInfo.getUserId()
-            );
-            return ResponseEntity.ok(Map.of("message", "Withdrawal successful"));
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        }
+        return idempotencyService.execute(userInfo.getUserId(), idempotencyKey, "withdraw", request, () -> {
+            try {
+                accountService.withdraw(
+                        request.getAccountNumber(),
+                        request.getAmount(),
+                        userInfo.getUserId()
+                );
+                return ResponseEntity.ok(Map.of("message", "Withdrawal successful"));
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
     }
 
     @PostMapping("/transfer")
-    public ResponseEntity<?> transfer(@RequestBody TransferRequest request) {
+    public ResponseEntity<?> transfer(@RequestBody TransferRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         UserContext.UserInfo userInfo = UserContext.getUser();
         if (userInfo == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body("User context not found");
         }
 
-        try {
-            accountService.transfer(
-                    request.getFromAccount(),
-                    request.getToAccount(),
-                    request.getAmount(),
-                    userInfo.getUserId()
-            );
-            return ResponseEntity.ok(Map.of("message", "Transfer successful"));
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        return idempotencyService.execute(userInfo.getUserId(), idempotencyKey, "transfer", request, () -> {
+            try {
+                accountService.transfer(
+                        request.getFromAccount(),
+                        request.getToAccount(),
+                        request.getAmount(),
+                        userInfo.getUserId()
+                );
+                return ResponseEntity.ok(Map.of("message", "Transfer successful"));
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
+    }
+
+    @PostMapping("/transfer/batch")
+    public ResponseEntity<?> transferBatch(@RequestBody BatchTransferRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        UserContext.UserInfo userInfo = UserContext.getUser();
+        if (userInfo == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body("User context not found");
         }
+
+        return idempotencyService.execute(userInfo.getUserId(), idempotencyKey, "transfer-batch", request, () -> {
+            try {
+                List<BatchTransferResult> results = batchTransferService.transferBatch(
+                        request.getTransfers(),
+                        userInfo.getUserId()
+                );
+                long succeeded = results.stream().filter(BatchTransferResult::isSuccess).count();
+                return ResponseEntity.ok(Map.of(
+                        "total", results.size(),
+                        "succeeded", succeeded,
+                        "failed", results.size() - succeeded,
+                        "results", results
+                ));
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,62 @@
+package com.example.fintech.accountservice.controller;
+
+import com.example.fintech.accountservice.cache.AccountSnapshotCache;
+import com.example.fintech.accountservice.idempotency.IdempotencyService;
+import com.example.fintech.accountservice.ledger.LedgerEngine;
+import com.example.fintech.accountservice.lock.AccountLockManager;
+import com.example.fintech.common.dedupe.MessageDeduplicator;
+import com.example.fintech.common.outbox.OutboxRelay;
+import com.example.fintech.common.service.EventPublisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/accounts/metrics")
+public class AccountMetricsController {
+
+    @Autowired
+    private AccountLockManager accountLockManager;
+
+    @Autowired
+    private AccountSnapshotCache accountSnapshotCache;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private EventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private OutboxRelay outboxRelay;
+
+    @Autowired(required = false)
+    private MessageDeduplicator messageDeduplicator;
+
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
+    @GetMapping
+    public ResponseEntity<?> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("locks", accountLockManager.getMetrics());
+        metrics.put("accountCache", accountSnapshotCache.getMetrics());
+        metrics.put("idempotency", idempotencyService.getMetrics());
+        metrics.put("eventPublisher", eventPublisher.getMetrics());
+        if (outboxRelay != null) {
+            metrics.put("outbox", outboxRelay.getMetrics());
+        }
+        if (messageDeduplicator != null) {
+            metrics.put("dedupe", messageDeduplicator.getMetrics());
+        }
+        if (ledgerEngine != null) {
+            metrics.put("ledger", ledgerEngine.getMetrics());
+        }
+        return ResponseEntity.ok(metrics);
+    }
+}
@@ -7,6 +7,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/accounts/distributed")
@@ -16,23 +18,22 @@ public class istributedTransactionController {
     private DistributedTransferService distributedTransferService;
 
     @PostMapping("/transfer")
-    public ResponseEntity<?> distributedTransfer(@RequestBody TransferRequest request) {
-        try {
-            distributedTransferService.executeDistributedTransfer(
-                    request.getFromAccount(),
-                    request.getToAccount(),
-                    request.getAmount()
-            );
-
-            return ResponseEntity.ok(Map.of(
-                    "message", "Distributed transfer completed susccessfully",
-                    "type", "SAGA_PATTERN"
-            ));
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().body(Map.of(
-                    "error", "Distributed transfer failed",
-                    "message", e.getMessage()
-            ));
-        }
+    public CompletableFuture<ResponseEntity<?>> distributedTransfer(@RequestBody TransferRequest request) {
+        return distributedTransferService.executeDistributedTransfer(
+                        request.getFromAccount(),
+                        request.getToAccount(),
+                        request.getAmount()
+                )
+                .<ResponseEntity<?>>thenApply(v -> ResponseEntity.ok(Map.of(
+                        "message", "Distributed transfer completed susccessfully",
+                        "type", "SAGA_PATTERN"
+                )))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    return ResponseEntity.badRequest().body(Map.of(
+                            "error", "Distributed transfer failed",
+                            "message", String.valueOf(cause.getMessage())
+                    ));
+                });
     }
 }
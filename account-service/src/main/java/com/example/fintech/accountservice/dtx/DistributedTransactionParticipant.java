@@ -0,0 +1,144 @@
+package com.example.fintech.accountservice.dtx;
+
+import com.example.fintech.accountservice.cache.AccountSnapshotCache;
+import com.example.fintech.accountservice.ledger.LedgerEngine;
+import com.example.fintech.accountservice.repository.AccountRepository;
+import com.example.fintech.accountservice.service.BalanceSlotService;
+import com.example.fintech.accountservice.service.FundsHoldService;
+import com.example.fintech.common.config.RabbitMQConfig;
+import com.example.fintech.common.entity.Account;
+import com.example.fintech.common.event.PrepareVoteEvent;
+import com.example.fintech.common.event.TransactionEvent;
+import com.example.fintech.common.exception.InvalidTransactionException;
+import com.example.fintech.common.service.EventPublisher;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * account-service side of the two-phase commit.
+ *
+ * Prepare reserves the amount as a funds hold keyed by the transaction id and votes back to the
+ * coordinator's reply queue. Commit captures the hold and credits the receiver in one local
+ * transaction; abort releases it. A prepared participant must be able to commit whenever the
+ * decision arrives, so these holds never expire: only the coordinator's decision resolves them.
+ * Prepares and decisions travel on different queues, so an abort can overtake its prepare; the
+ * abort then leaves a released tombstone under the hold id and the late prepare votes no.
+ * Decisions that cannot be applied are dead-lettered instead of being redelivered forever.
+ */
+@Component
+public class DistributedTransactionParticipant {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedTransactionParticipant.class);
+
+    @Autowired
+    private FundsHoldService fundsHoldService;
+
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountSnapshotCache accountSnapshotCache;
+
+    @Autowired
+    private EventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${spring.application.name:account-service}")
+    private String participantName;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @RabbitListener(queues = RabbitMQConfig.DTX_PREPARE_QUEUE, ackMode = "AUTO")
+    public void onPrepare(TransactionEvent event, @Header(AmqpHeaders.REPLY_TO) String replyTo) {
+        PrepareVoteEvent vote = new PrepareVoteEvent();
+        vote.setTransactionId(event.getTransactionId());
+        vote.setParticipant(participantName);
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> prepare(event));
+            vote.setPrepared(true);
+        } catch (Exception e) {
+            logger.warn("Voting no on distributed transaction {}: {}", event.getTransactionId(), e.getMessage());
+            vote.setPrepared(false);
+            vote.setReason(e.getMessage());
+        }
+
+        vote.setTimestamp(LocalDateTime.now());
+        eventPublisher.publishPrepareVote(vote, replyTo);
+    }
+
+    // 提交、中止都是幂等的，数据库异常时抛出让消息重新投递；业务上无法执行的决议转入死信队列人工处理
+    @RabbitListener(queues = RabbitMQConfig.DTX_DECISION_QUEUE, ackMode = "AUTO")
+    public void onDecision(TransactionEvent event) {
+        String transactionId = event.getTransactionId();
+        try {
+            switch (event.getTransactionType()) {
+                case "DISTRIBUTED_TRANSFER_COMMIT" -> transactionTemplate.executeWithoutResult(status -> commit(event));
+                case "DISTRIBUTED_TRANSFER_ABORT" -> transactionTemplate.executeWithoutResult(
+                        status -> fundsHoldService.release(transactionId, event.getFromAccount(), event.getAmount()));
+                default -> logger.warn("Ignoring unknown decision {} for {}", event.getTransactionType(), transactionId);
+            }
+        } catch (InvalidTransactionException e) {
+            logger.error("Cannot apply decision {} for distributed transaction {}: {}",
+                    event.getTransactionType(), transactionId, e.getMessage());
+            throw new AmqpRejectAndDontRequeueException(e.getMessage(), e);
+        }
+    }
+
+    private void prepare(TransactionEvent event) {
+        String fromAccount = event.getFromAccount();
+        String toAccount = event.getToAccount();
+        // 内存账本账户的余额不在数据库中，无法用冻结预留
+        if (ledgerEngine != null && (ledgerEngine.manages(fromAccount) || ledgerEngine.manages(toAccount))) {
+            throw new InvalidTransactionException("Ledger accounts cannot join distributed transactions");
+        }
+        Account receiver = accountRepository.findByAccountNumber(toAccount)
+                .orElseThrow(() -> new InvalidTransactionException("Account not found: " + toAccount));
+        if (!"ACTIVE".equals(receiver.getStatus())) {
+            throw new InvalidTransactionException("Account is not active for receive");
+        }
+
+        fundsHoldService.placeHoldUntilResolved(event.getTransactionId(), fromAccount, event.getAmount());
+    }
+
+    private void commit(TransactionEvent event) {
+        // 重复投递时冻结已是 CAPTURED，不再重复入账
+        if (!fundsHoldService.capture(event.getTransactionId())) {
+            return;
+        }
+
+        String toAccount = event.getToAccount();
+        if (balanceSlotService.isSlotted(toAccount)) {
+            balanceSlotService.credit(toAccount, event.getAmount());
+        } else {
+            accountRepository.adjustBalance(toAccount, event.getAmount(), LocalDateTime.now());
+        }
+        accountSnapshotCache.evictAfterCommit(toAccount);
+        logger.info("Committed distributed transaction {}", event.getTransactionId());
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.fintech.accountservice.idempotency;
+
+import com.example.fintech.accountservice.repository.IdempotencyKeyRepository;
+import com.example.fintech.common.entity.IdempotencyKey;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key handling for money-movement endpoints.
+ *
+ * Completed responses are looked up in a bounded in-memory index first, then in the
+ * idempotency_keys table. Duplicates arriving while the first request is still running wait on
+ * it in this instance; on another instance they see the IN_PROGRESS placeholder row and get 409.
+ * Only successful responses are stored, so a failed request can be retried with the same key.
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${account.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${account.idempotency.index-size:100000}")
+    private long indexSize;
+
+    @Value("${account.idempotency.wait-timeout-ms:10000}")
+    private long waitTimeoutMillis;
+
+    private Cache<String, StoredResponse> index;
+
+    // 本实例内正在执行的请求，重复请求等待同一个结果
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    private record StoredResponse(String requestHash, int status, String body) {
+    }
+
+    @PostConstruct
+    public void init() {
+        index = Caffeine.newBuilder()
+                .maximumSize(indexSize)
+                .expireAfterWrite(Duration.ofHours(ttlHours))
+                .build();
+    }
+
+    public ResponseEntity<?> execute(Long userId, String idempotencyKey, String operation, Object request,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body("Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String indexKey = userId + ":" + idempotencyKey;
+        String requestHash = fingerprint(operation, request);
+
+        StoredResponse cached = index.getIfPresent(indexKey);
+        if (cached != null) {
+            return replay(cached, requestHash);
+        }
+
+        CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(indexKey, mine);
+        if (running != null) {
+            return awaitInFlight(running, requestHash);
+        }
+
+        StoredResponse response = null;
+        try {
+            response = executeOnce(userId, idempotencyKey, indexKey, requestHash, action);
+            return toResponse(response, false);
+        } finally {
+            inFlight.remove(indexKey, mine);
+            if (response != null) {
+                mine.complete(response);
+            } else {
+                mine.completeExceptionally(new IllegalStateException("Original request failed"));
+            }
+        }
+    }
+
+    private StoredResponse executeOnce(Long userId, String idempotencyKey, String indexKey, String requestHash,
+                                       Supplier<ResponseEntity<?>> action) {
+        Optional<IdempotencyKey> existing = idempotencyKeyRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey);
+        if (existing.isPresent()) {
+            IdempotencyKey stored = existing.get();
+            if (IdempotencyKey.COMPLETED.equals(stored.getStatus())) {
+                StoredResponse response = new StoredResponse(
+                        stored.getRequestHash(), stored.getResponseStatus(), stored.getResponseBody());
+                index.put(indexKey, response);
+                return checkHash(response, requestHash);
+            }
+            return conflict(requestHash, "A request with this Idempotency-Key is still in progress");
+        }
+
+        if (!insertPlaceholder(userId, idempotencyKey, requestHash)) {
+            return conflict(requestHash, "A request with this Idempotency-Key is still in progress");
+        }
+
+        ResponseEntity<?> result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            idempotencyKeyRepository.deletePlaceholder(userId, idempotencyKey);
+            throw e;
+        }
+
+        StoredResponse response = new StoredResponse(requestHash, result.getStatusCode().value(), toJson(result.getBody()));
+        if (result.getStatusCode().is2xxSuccessful()) {
+            complete(userId, idempotencyKey, response);
+            index.put(indexKey, response);
+        } else {
+            idempotencyKeyRepository.deletePlaceholder(userId, idempotencyKey);
+        }
+        return response;
+    }
+
+    private boolean insertPlaceholder(Long userId, String idempotencyKey, String requestHash) {
+        IdempotencyKey placeholder = new IdempotencyKey();
+        placeholder.setUserId(userId);
+        placeholder.setIdempotencyKey(idempotencyKey);
+        placeholder.setRequestHash(requestHash);
+        placeholder.setStatus(IdempotencyKey.IN_PROGRESS);
+        placeholder.setExpiresAt(LocalDateTime.now().plusHours(ttlHours));
+        try {
+            idempotencyKeyRepository.saveAndFlush(placeholder);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // 其他实例刚插入了同一个key
+            return false;
+        }
+    }
+
+    private void complete(Long userId, String idempotencyKey, StoredResponse response) {
+        try {
+            IdempotencyKey stored = idempotencyKeyRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                    .orElseThrow(() -> new IllegalStateException("Idempotency placeholder disappeared"));
+            stored.setStatus(IdempotencyKey.COMPLETED);
+            stored.setResponseStatus(response.status());
+            stored.setResponseBody(response.body());
+            idempotencyKeyRepository.save(stored);
+        } catch (RuntimeException e) {
+            // 资金操作已提交，这里失败只影响跨实例的重放；占位行保留，重试会得到409而不是重复执行
+            logger.error("Failed to store idempotent response for key {}: {}", idempotencyKey, e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> awaitInFlight(CompletableFuture<StoredResponse> running, String requestHash) {
+        try {
+            StoredResponse response = running.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+            return replay(response, requestHash);
+        } catch (TimeoutException e) {
+            return toResponse(conflict(requestHash, "A request with this Idempotency-Key is still in progress"), false);
+        } catch (ExecutionException e) {
+            return toResponse(conflict(requestHash, "The original request with this Idempotency-Key failed, please retry"), false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return toResponse(conflict(requestHash, "Interrupted while waiting for the original request"), false);
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse response, String requestHash) {
+        StoredResponse checked = checkHash(response, requestHash);
+        boolean replayed = checked == response && HttpStatus.valueOf(response.status()).is2xxSuccessful();
+        if (replayed) {
+            replays.increment();
+        }
+        return toResponse(checked, replayed);
+    }
+
+    private StoredResponse checkHash(StoredResponse response, String requestHash) {
+        if (response.requestHash().equals(requestHash)) {
+            return response;
+        }
+        conflicts.increment();
+        return new StoredResponse(requestHash, HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                toJson("Idempotency-Key was already used with a different request"));
+    }
+
+    private StoredResponse conflict(String requestHash, String message) {
+        conflicts.increment();
+        return new StoredResponse(requestHash, HttpStatus.CONFLICT.value(), toJson(message));
+    }
+
+    private ResponseEntity<?> toResponse(StoredResponse response, boolean replayed) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.status());
+        if (replayed) {
+            builder.header("Idempotent-Replayed", "true");
+        }
+        try {
+            return builder.body(response.body() == null ? null : objectMapper.readValue(response.body(), Object.class));
+        } catch (JsonProcessingException e) {
+            return builder.body(response.body());
+        }
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response is not serializable", e);
+        }
+    }
+
+    private String fingerprint(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Cannot fingerprint request", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${account.idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        int purged = idempotencyKeyRepository.deleteExpired(LocalDateTime.now());
+        if (purged > 0) {
+            logger.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("indexSize", index.estimatedSize());
+        metrics.put("inFlight", inFlight.size());
+        metrics.put("replays", replays.sum());
+        metrics.put("conflicts", conflicts.sum());
+        return metrics;
+    }
+}
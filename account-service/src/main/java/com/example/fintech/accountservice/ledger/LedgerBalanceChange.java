@@ -0,0 +1,19 @@
+package com.example.fintech.accountservice.ledger;
+
+import java.math.BigDecimal;
+
+public class LedgerBalanceChange {
+    private final String accountNumber;
+    private final BigDecimal oldBalance;
+    private final BigDecimal newBalance;
+
+    public LedgerBalanceChange(String accountNumber, BigDecimal oldBalance, BigDecimal newBalance) {
+        this.accountNumber = accountNumber;
+        this.oldBalance = oldBalance;
+        this.newBalance = newBalance;
+    }
+
+    public String getAccountNumber() { return accountNumber; }
+    public BigDecimal getOldBalance() { return oldBalance; }
+    public BigDecimal getNewBalance() { return newBalance; }
+}
@@ -0,0 +1,54 @@
+package com.example.fintech.accountservice.ledger;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+final class LedgerCommand {
+
+    enum Type {
+        DEPOSIT,
+        WITHDRAW,
+        TRANSFER,
+        // 跨分片转账的入账腿，由出账分片在日志落盘后投递
+        TRANSFER_CREDIT
+    }
+
+    final Type type;
+    final String accountNumber;
+    final String counterpartyAccountNumber;
+    final BigDecimal amount;
+    final String transferId;
+    final LedgerBalanceChange debitChange;
+    final CompletableFuture<List<LedgerBalanceChange>> future;
+
+    private LedgerCommand(Type type, String accountNumber, String counterpartyAccountNumber, BigDecimal amount,
+                          String transferId, LedgerBalanceChange debitChange,
+                          CompletableFuture<List<LedgerBalanceChange>> future) {
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.counterpartyAccountNumber = counterpartyAccountNumber;
+        this.amount = amount;
+        this.transferId = transferId;
+        this.debitChange = debitChange;
+        this.future = future;
+    }
+
+    static LedgerCommand deposit(String accountNumber, BigDecimal amount) {
+        return new LedgerCommand(Type.DEPOSIT, accountNumber, null, amount, null, null, new CompletableFuture<>());
+    }
+
+    static LedgerCommand withdraw(String accountNumber, BigDecimal amount) {
+        return new LedgerCommand(Type.WITHDRAW, accountNumber, null, amount, null, null, new CompletableFuture<>());
+    }
+
+    static LedgerCommand transfer(String fromAccountNumber, String toAccountNumber, BigDecimal amount, String transferId) {
+        return new LedgerCommand(Type.TRANSFER, fromAccountNumber, toAccountNumber, amount, transferId, null,
+                new CompletableFuture<>());
+    }
+
+    static LedgerCommand transferCredit(LedgerCommand transfer, LedgerBalanceChange debitChange) {
+        return new LedgerCommand(Type.TRANSFER_CREDIT, transfer.counterpartyAccountNumber, transfer.accountNumber,
+                transfer.amount, transfer.transferId, debitChange, transfer.future);
+    }
+}
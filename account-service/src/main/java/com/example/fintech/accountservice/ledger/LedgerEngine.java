@@ -0,0 +1,237 @@
+package com.example.fintech.accountservice.ledger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory ledger for hot accounts (LMAX style).
+ *
+ * Accounts listed in account.ledger.accounts are hash-sharded onto single-threaded processors.
+ * Each command's future completes once its journal records are fsynced; balances reach the
+ * accounts table later through batched write-behind. Only one account-service instance may run
+ * the ledger for a given set of accounts.
+ */
+@Component
+@ConditionalOnProperty(name = "account.ledger.enabled", havingValue = "true")
+public class LedgerEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerEngine.class);
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String RECOVERY_MARKER = "recovery.epoch";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${account.ledger.shards:4}")
+    private int shardCount;
+
+    @Value("${account.ledger.ring-size:8192}")
+    private int ringSize;
+
+    @Value("${account.ledger.journal-dir:./ledger-journal}")
+    private String journalDir;
+
+    @Value("${account.ledger.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${account.ledger.flush-interval-ms:200}")
+    private long flushIntervalMillis;
+
+    @Value("${account.ledger.accounts:}")
+    private String ledgerAccounts;
+
+    private LedgerShard[] shards;
+    private Set<String> managedAccounts;
+
+    @PostConstruct
+    public void start() throws IOException {
+        managedAccounts = Arrays.stream(ledgerAccounts.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+
+        LedgerStore store = new LedgerStore(jdbcTemplate, new TransactionTemplate(transactionManager));
+        recover(store);
+
+        shards = new LedgerShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String journalName = "shard-" + i;
+            LedgerJournal journal = new LedgerJournal(journalPath(journalName));
+            shards[i] = new LedgerShard(i, journalName, store.flushedEpoch(journalName), this, store, journal,
+                    ringSize, flushBatchSize, flushIntervalMillis);
+        }
+        for (LedgerShard shard : shards) {
+            shard.start();
+        }
+
+        logger.info("Ledger engine started with {} shards for {} accounts", shardCount, managedAccounts.size());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (LedgerShard shard : shards) {
+            shard.stop();
+        }
+        for (LedgerShard shard : shards) {
+            shard.closeJournal();
+        }
+        logger.info("Ledger engine stopped");
+    }
+
+    public boolean manages(String accountNumber) {
+        return managedAccounts.contains(accountNumber);
+    }
+
+    public Set<String> getManagedAccounts() {
+        return managedAccounts;
+    }
+
+    public CompletableFuture<List<LedgerBalanceChange>> deposit(String accountNumber, BigDecimal amount) {
+        return submit(LedgerCommand.deposit(accountNumber, amount));
+    }
+
+    public CompletableFuture<List<LedgerBalanceChange>> withdraw(String accountNumber, BigDecimal amount) {
+        return submit(LedgerCommand.withdraw(accountNumber, amount));
+    }
+
+    /**
+     * Completes with the debit change followed by the credit change, after both are journaled.
+     */
+    public CompletableFuture<List<LedgerBalanceChange>> transfer(String fromAccountNumber, String toAccountNumber,
+                                                                 BigDecimal amount) {
+        return submit(LedgerCommand.transfer(fromAccountNumber, toAccountNumber, amount, UUID.randomUUID().toString()));
+    }
+
+    public Optional<BigDecimal> getBalance(String accountNumber) {
+        return shardFor(accountNumber).getBalance(accountNumber);
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("shards", shards.length);
+        metrics.put("managedAccounts", managedAccounts.size());
+        metrics.put("queueDepth", Arrays.stream(shards).mapToInt(LedgerShard::queueDepth).sum());
+        return metrics;
+    }
+
+    LedgerShard shardFor(String accountNumber) {
+        return shards[Math.floorMod(accountNumber.hashCode(), shards.length)];
+    }
+
+    private CompletableFuture<List<LedgerBalanceChange>> submit(LedgerCommand command) {
+        if (!shardFor(command.accountNumber).offer(command)) {
+            command.future.completeExceptionally(new IllegalStateException("Ledger is saturated, please retry"));
+        }
+        return command.future;
+    }
+
+    private void recover(LedgerStore store) throws IOException {
+        Path dir = Files.createDirectories(Paths.get(journalDir));
+        Path marker = dir.resolve(RECOVERY_MARKER);
+
+        // 分片数变化后旧日志也要回放，因此扫描目录而不是按当前分片数查找
+        List<Path> journals;
+        try (var files = Files.list(dir)) {
+            journals = files.filter(p -> p.getFileName().toString().endsWith(JOURNAL_SUFFIX)).sorted().toList();
+        }
+        // 压缩中途崩溃留下的临时文件：原日志仍完整，丢弃即可
+        for (Path journal : journals) {
+            Files.deleteIfExists(LedgerJournal.tempPath(journal));
+        }
+        if (journals.isEmpty()) {
+            Files.deleteIfExists(marker);
+            return;
+        }
+
+        // 先把本次恢复的批次号落盘：恢复提交后、删除日志前崩溃时，重启据此识别已应用过的日志
+        long recoveryEpoch;
+        if (Files.exists(marker)) {
+            recoveryEpoch = Long.parseLong(Files.readString(marker).trim());
+        } else {
+            recoveryEpoch = store.flushedEpoch(LedgerStore.RECOVERY_JOURNAL) + 1;
+            Files.writeString(marker, Long.toString(recoveryEpoch), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        }
+
+        if (store.flushedEpoch(LedgerStore.RECOVERY_JOURNAL) >= recoveryEpoch) {
+            logger.warn("Ledger journal recovery {} was already applied, discarding journals", recoveryEpoch);
+        } else {
+            replay(store, recoveryEpoch, journals);
+        }
+
+        for (Path path : journals) {
+            Files.delete(path);
+        }
+        Files.delete(marker);
+    }
+
+    private void replay(LedgerStore store, long recoveryEpoch, List<Path> journals) throws IOException {
+        Map<String, BigDecimal> deltas = new HashMap<>();
+        Map<String, String[]> pendingTransfers = new HashMap<>();
+        Set<String> appliedCredits = new HashSet<>();
+
+        for (Path path : journals) {
+            String fileName = path.getFileName().toString();
+            // 批次号不大于已入库批次的记录已经写回过
+            long flushedEpoch = store.flushedEpoch(fileName.substring(0, fileName.length() - JOURNAL_SUFFIX.length()));
+            for (String line : LedgerJournal.readLines(path)) {
+                String[] parts = line.split("\\|");
+                switch (parts[0]) {
+                    case "D" -> {
+                        if (Long.parseLong(parts[1]) > flushedEpoch) {
+                            deltas.merge(parts[2], new BigDecimal(parts[3]), BigDecimal::add);
+                        }
+                    }
+                    case "T" -> pendingTransfers.put(parts[1], parts);
+                    case "C" -> appliedCredits.add(parts[1]);
+                    default -> logger.warn("Skipping unknown ledger journal record: {}", line);
+                }
+            }
+        }
+
+        Map<String, BigDecimal> missingCredits = new HashMap<>();
+        pendingTransfers.forEach((transferId, parts) -> {
+            if (!appliedCredits.contains(transferId)) {
+                missingCredits.merge(parts[2], new BigDecimal(parts[3]), BigDecimal::add);
+            }
+        });
+
+        logger.warn("Recovering ledger journal: {} unflushed balance deltas, {} unfinished transfer credits",
+                deltas.size(), missingCredits.size());
+        store.recover(recoveryEpoch, deltas, missingCredits);
+    }
+
+    private Path journalPath(String journalName) {
+        return Paths.get(journalDir, journalName + JOURNAL_SUFFIX);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.fintech.accountservice.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Append-only journal of one ledger shard. Records are plain text lines:
+ * <pre>
+ *   D|epoch|accountNumber|delta      balance change, written to the database by write-behind batch epoch
+ *   T|transferId|toAccount|amount    debit leg of a cross-shard transfer, credit still pending
+ *   C|transferId                     credit leg of a cross-shard transfer applied
+ * </pre>
+ * Not thread safe; owned by the shard thread.
+ */
+final class LedgerJournal {
+
+    static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path path;
+    private FileChannel channel;
+    private final StringBuilder pending = new StringBuilder();
+
+    LedgerJournal(Path path) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.getParent());
+        this.channel = openForAppend(path);
+    }
+
+    static Path tempPath(Path path) {
+        return path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+    }
+
+    static List<String> readLines(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return List.of();
+        }
+        return Files.readAllLines(path, StandardCharsets.UTF_8);
+    }
+
+    void append(String record) {
+        pending.append(record).append('\n');
+    }
+
+    boolean hasPending() {
+        return pending.length() > 0;
+    }
+
+    // 写入并fsync，一个批次只调用一次
+    void sync() throws IOException {
+        if (pending.length() == 0) {
+            return;
+        }
+        write(pending.toString());
+        pending.setLength(0);
+        channel.force(false);
+    }
+
+    /**
+     * Replaces the journal content with the given records. Used after a write-behind flush,
+     * when balance deltas are in the database and only unresolved transfer records must survive.
+     *
+     * The records are written and fsynced to a temp file that is then renamed over the journal,
+     * so a crash leaves either the old or the new journal, never a truncated one.
+     */
+    void rewrite(List<String> records) throws IOException {
+        sync();
+        StringBuilder content = new StringBuilder();
+        for (String record : records) {
+            content.append(record).append('\n');
+        }
+
+        Path temp = tempPath(path);
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(tempChannel, content.toString());
+            tempChannel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+
+        // 旧通道指向被替换掉的文件，重新打开
+        channel.close();
+        channel = openForAppend(path);
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    private void write(String content) throws IOException {
+        write(channel, content);
+    }
+
+    private static void write(FileChannel target, String content) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static FileChannel openForAppend(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // 让重命名本身落盘；部分平台不支持对目录fsync，忽略即可
+    private void forceDirectory() {
+        try (FileChannel dir = FileChannel.open(path.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.fintech.accountservice.ledger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer / single-consumer ring buffer.
+ *
+ * Producers claim a sequence with a CAS on the tail and then publish into the slot;
+ * the single consumer reads slots in sequence order and clears them before advancing the head.
+ */
+final class LedgerRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    LedgerRingBuffer(int requestedCapacity) {
+        int capacity = 1;
+        while (capacity < requestedCapacity) {
+            capacity <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    boolean offer(E element) {
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head >= slots.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.set((int) (sequence & mask), element);
+                return true;
+            }
+        }
+    }
+
+    // 仅由消费线程调用
+    E poll() {
+        long sequence = head;
+        int index = (int) (sequence & mask);
+        E element = slots.get(index);
+        if (element == null) {
+            // 槽位已被声明但尚未发布，或者缓冲区为空
+            return null;
+        }
+        slots.lazySet(index, null);
+        head = sequence + 1;
+        return element;
+    }
+
+    boolean isEmpty() {
+        return head == tail.get();
+    }
+
+    int size() {
+        return (int) (tail.get() - head);
+    }
+}
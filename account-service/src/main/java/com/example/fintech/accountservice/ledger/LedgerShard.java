@@ -0,0 +1,388 @@
+package com.example.fintech.accountservice.ledger;
+
+import com.example.fintech.common.exception.AccountNotFoundException;
+import com.example.fintech.common.exception.InsufficientFundsException;
+import com.example.fintech.common.exception.InvalidTransactionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-threaded processor for the accounts hashed onto one shard.
+ *
+ * Commands are applied sequentially against in-memory balances, the resulting records are
+ * journaled and fsynced once per batch, and only then are callers' futures completed.
+ * Balance deltas are written back to the accounts table in batches (write-behind); each batch
+ * has an epoch, and journal records carry the epoch of the batch that will write them.
+ *
+ * Cross-shard transfers are split: this shard debits and journals a pending transfer record,
+ * then hands the credit leg to the other shard. A pending record is only dropped from the journal
+ * once the credit record is durable, and the credit record only once the pending record is gone,
+ * so recovery never loses or repeats a credit.
+ */
+final class LedgerShard implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerShard.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final class PendingTransfer {
+        final String toAccountNumber;
+        final String record;
+
+        PendingTransfer(String toAccountNumber, String record) {
+            this.toAccountNumber = toAccountNumber;
+            this.record = record;
+        }
+    }
+
+    private final int index;
+    private final String journalName;
+    private final LedgerEngine engine;
+    private final LedgerStore store;
+    private final LedgerJournal journal;
+    private final LedgerRingBuffer<LedgerCommand> ring;
+    // 跨分片入账腿走无界队列，避免两个分片互相等待对方的环形缓冲区
+    private final Queue<LedgerCommand> creditInbox = new ConcurrentLinkedQueue<>();
+    private final int maxBatchSize;
+    private final int flushBatchSize;
+    private final long flushIntervalNanos;
+
+    // 单写多读：只有分片线程修改，查询线程可以直接读取
+    private final Map<String, LedgerStore.LoadedAccount> accounts = new ConcurrentHashMap<>();
+    private final Map<String, BigDecimal> dirtyDeltas = new HashMap<>();
+    private final Map<String, PendingTransfer> pendingTransfers = new HashMap<>();
+    private final Map<String, String> retainedCredits = new HashMap<>();
+    private final List<Runnable> afterSync = new ArrayList<>();
+
+    // 新日志记录所属的写回批次
+    private long epoch;
+    // 结果未知的上一次写回：批次号已入库说明其实已提交
+    private long attemptedEpoch;
+    private Map<String, BigDecimal> attemptedDeltas;
+
+    // 由其他分片写入的握手信号
+    final Set<String> creditedTransfers = ConcurrentHashMap.newKeySet();
+    final Set<String> releasedCredits = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running = true;
+    private volatile boolean failed;
+    private Thread thread;
+
+    LedgerShard(int index, String journalName, long flushedEpoch, LedgerEngine engine, LedgerStore store,
+                LedgerJournal journal, int ringSize, int flushBatchSize, long flushIntervalMillis) {
+        this.index = index;
+        this.journalName = journalName;
+        this.epoch = flushedEpoch + 1;
+        this.engine = engine;
+        this.store = store;
+        this.journal = journal;
+        this.ring = new LedgerRingBuffer<>(ringSize);
+        this.maxBatchSize = Math.max(1, Math.min(ringSize, 1024));
+        this.flushBatchSize = flushBatchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    }
+
+    void start() {
+        thread = new Thread(this, "ledger-shard-" + index);
+        thread.start();
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    boolean offer(LedgerCommand command) {
+        if (failed) {
+            command.future.completeExceptionally(new IllegalStateException("Ledger shard " + index + " is unavailable"));
+            return true;
+        }
+        return ring.offer(command);
+    }
+
+    void offerCredit(LedgerCommand command) {
+        creditInbox.add(command);
+    }
+
+    Optional<BigDecimal> getBalance(String accountNumber) {
+        LedgerStore.LoadedAccount account = accounts.get(accountNumber);
+        return account == null ? Optional.empty() : Optional.of(account.balance);
+    }
+
+    int queueDepth() {
+        return ring.size() + creditInbox.size();
+    }
+
+    @Override
+    public void run() {
+        List<LedgerCommand> batch = new ArrayList<>(maxBatchSize);
+        long lastFlush = System.nanoTime();
+
+        while (running || !ring.isEmpty() || !creditInbox.isEmpty()) {
+            LedgerCommand command;
+            while (batch.size() < maxBatchSize && (command = creditInbox.poll()) != null) {
+                batch.add(command);
+            }
+            while (batch.size() < maxBatchSize && (command = ring.poll()) != null) {
+                batch.add(command);
+            }
+
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else {
+                processBatch(batch);
+                batch.clear();
+            }
+
+            long now = System.nanoTime();
+            if (!failed && (dirtyDeltas.size() >= flushBatchSize
+                    || (!dirtyDeltas.isEmpty() && now - lastFlush >= flushIntervalNanos))) {
+                writeBehind();
+                lastFlush = now;
+            }
+        }
+
+        if (!failed) {
+            writeBehind();
+        }
+    }
+
+    private void processBatch(List<LedgerCommand> batch) {
+        for (LedgerCommand command : batch) {
+            if (failed) {
+                command.future.completeExceptionally(new IllegalStateException("Ledger shard " + index + " is unavailable"));
+                continue;
+            }
+            try {
+                apply(command);
+            } catch (RuntimeException e) {
+                command.future.completeExceptionally(e);
+            }
+        }
+
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            // 日志无法落盘时内存状态已不可信，停止该分片
+            logger.error("Ledger shard {} failed to sync journal {}", index, journal.getPath(), e);
+            failed = true;
+            for (LedgerCommand command : batch) {
+                command.future.completeExceptionally(new IllegalStateException("Ledger journal write failed"));
+            }
+            afterSync.clear();
+            return;
+        }
+
+        for (Runnable action : afterSync) {
+            action.run();
+        }
+        afterSync.clear();
+    }
+
+    private void apply(LedgerCommand command) {
+        switch (command.type) {
+            case DEPOSIT -> {
+                LedgerBalanceChange change = credit(load(command.accountNumber), command.accountNumber, command.amount);
+                afterSync.add(() -> command.future.complete(List.of(change)));
+            }
+            case WITHDRAW -> {
+                LedgerBalanceChange change = debit(load(command.accountNumber), command.accountNumber, command.amount);
+                afterSync.add(() -> command.future.complete(List.of(change)));
+            }
+            case TRANSFER -> applyTransfer(command);
+            case TRANSFER_CREDIT -> applyTransferCredit(command);
+        }
+    }
+
+    private void applyTransfer(LedgerCommand command) {
+        LedgerStore.LoadedAccount from = load(command.accountNumber);
+        LedgerShard target = engine.shardFor(command.counterpartyAccountNumber);
+
+        if (target == this) {
+            LedgerStore.LoadedAccount to = load(command.counterpartyAccountNumber);
+            requireActive(to, command.counterpartyAccountNumber);
+            LedgerBalanceChange debitChange = debit(from, command.accountNumber, command.amount);
+            LedgerBalanceChange creditChange = credit(to, command.counterpartyAccountNumber, command.amount);
+            afterSync.add(() -> command.future.complete(List.of(debitChange, creditChange)));
+            return;
+        }
+
+        LedgerBalanceChange debitChange = debit(from, command.accountNumber, command.amount);
+        String record = "T|" + command.transferId + "|" + command.counterpartyAccountNumber + "|" + command.amount.toPlainString();
+        journal.append(record);
+        pendingTransfers.put(command.transferId, new PendingTransfer(command.counterpartyAccountNumber, record));
+
+        // 出账记录落盘后才把入账腿交给目标分片
+        afterSync.add(() -> target.offerCredit(LedgerCommand.transferCredit(command, debitChange)));
+    }
+
+    private void applyTransferCredit(LedgerCommand command) {
+        LedgerStore.LoadedAccount to = accounts.get(command.accountNumber);
+        if (to == null) {
+            to = store.load(command.accountNumber);
+            if (to == null) {
+                // 出账已落盘，入账账户却不存在：保留挂起记录，由人工或恢复流程处理
+                logger.error("Ledger shard {} cannot credit missing account {} for transfer {}",
+                        index, command.accountNumber, command.transferId);
+                command.future.completeExceptionally(
+                        new AccountNotFoundException("Account not found: " + command.accountNumber));
+                return;
+            }
+            accounts.put(command.accountNumber, to);
+        }
+
+        // 入账腿不再校验状态：出账已经生效，资金必须落到目标账户
+        LedgerBalanceChange creditChange = credit(to, command.accountNumber, command.amount);
+        String record = "C|" + command.transferId;
+        journal.append(record);
+        retainedCredits.put(command.transferId, record);
+
+        LedgerShard origin = engine.shardFor(command.counterpartyAccountNumber);
+        afterSync.add(() -> {
+            origin.creditedTransfers.add(command.transferId);
+            command.future.complete(List.of(command.debitChange, creditChange));
+        });
+    }
+
+    private LedgerBalanceChange debit(LedgerStore.LoadedAccount account, String accountNumber, BigDecimal amount) {
+        requireActive(account, accountNumber);
+        // 与数据库路径一致，可用余额 = balance - held_balance
+        if (account.balance.subtract(account.heldBalance).compareTo(amount) < 0) {
+            throw new InsufficientFundsException("Insufficient funds");
+        }
+        return applyDelta(account, accountNumber, amount.negate());
+    }
+
+    private LedgerBalanceChange credit(LedgerStore.LoadedAccount account, String accountNumber, BigDecimal amount) {
+        return applyDelta(account, accountNumber, amount);
+    }
+
+    private LedgerBalanceChange applyDelta(LedgerStore.LoadedAccount account, String accountNumber, BigDecimal delta) {
+        BigDecimal oldBalance = account.balance;
+        BigDecimal newBalance = oldBalance.add(delta);
+        account.balance = newBalance;
+        dirtyDeltas.merge(accountNumber, delta, BigDecimal::add);
+        journal.append("D|" + epoch + "|" + accountNumber + "|" + delta.toPlainString());
+        return new LedgerBalanceChange(accountNumber, oldBalance, newBalance);
+    }
+
+    private void requireActive(LedgerStore.LoadedAccount account, String accountNumber) {
+        if (!account.active) {
+            throw new InvalidTransactionException("Account is not active: " + accountNumber);
+        }
+    }
+
+    private LedgerStore.LoadedAccount load(String accountNumber) {
+        LedgerStore.LoadedAccount account = accounts.get(accountNumber);
+        if (account == null) {
+            // 首次访问时从数据库加载，之后以内存余额为准
+            account = store.load(accountNumber);
+            if (account == null) {
+                throw new AccountNotFoundException("Account not found: " + accountNumber);
+            }
+            accounts.put(accountNumber, account);
+        }
+        return account;
+    }
+
+    private void writeBehind() {
+        if (dirtyDeltas.isEmpty() && pendingTransfers.isEmpty() && retainedCredits.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (attemptedDeltas != null) {
+                if (store.flushedEpoch(journalName) >= attemptedEpoch) {
+                    attemptedDeltas.forEach((accountNumber, delta) -> {
+                        BigDecimal remaining = dirtyDeltas.get(accountNumber).subtract(delta);
+                        if (remaining.signum() == 0) {
+                            dirtyDeltas.remove(accountNumber);
+                        } else {
+                            dirtyDeltas.put(accountNumber, remaining);
+                        }
+                    });
+                }
+                attemptedDeltas = null;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Ledger shard {} cannot check last write-behind, will retry: {}", index, e.getMessage());
+            return;
+        }
+
+        if (!dirtyDeltas.isEmpty()) {
+            // 每次尝试使用新批次号，之后的日志记录归入下一批
+            long flushEpoch = epoch++;
+            Map<String, BigDecimal> flushed = new HashMap<>(dirtyDeltas);
+            try {
+                store.writeDeltas(journalName, flushEpoch, flushed);
+            } catch (RuntimeException e) {
+                // 数据库不可用时保留脏数据和日志，下个周期重试
+                attemptedEpoch = flushEpoch;
+                attemptedDeltas = flushed;
+                logger.warn("Ledger shard {} write-behind failed, will retry: {}", index, e.getMessage());
+                return;
+            }
+            dirtyDeltas.clear();
+        }
+
+        List<String> retained = new ArrayList<>();
+        List<PendingTransfer> resolved = new ArrayList<>();
+        List<String> resolvedIds = new ArrayList<>();
+
+        for (Iterator<Map.Entry<String, PendingTransfer>> it = pendingTransfers.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, PendingTransfer> entry = it.next();
+            if (creditedTransfers.remove(entry.getKey())) {
+                resolved.add(entry.getValue());
+                resolvedIds.add(entry.getKey());
+                it.remove();
+            } else {
+                retained.add(entry.getValue().record);
+            }
+        }
+        for (Iterator<Map.Entry<String, String>> it = retainedCredits.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, String> entry = it.next();
+            if (releasedCredits.remove(entry.getKey())) {
+                it.remove();
+            } else {
+                retained.add(entry.getValue());
+            }
+        }
+
+        try {
+            journal.rewrite(retained);
+        } catch (IOException e) {
+            logger.error("Ledger shard {} failed to compact journal {}", index, journal.getPath(), e);
+            failed = true;
+            return;
+        }
+
+        // 挂起记录已从本分片日志中移除，通知入账分片可以丢弃对应的入账记录
+        for (int i = 0; i < resolved.size(); i++) {
+            engine.shardFor(resolved.get(i).toAccountNumber).releasedCredits.add(resolvedIds.get(i));
+        }
+    }
+
+    void closeJournal() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close ledger journal {}", journal.getPath(), e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.fintech.accountservice.ledger;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC access used by the ledger shards: loading an account on first touch and
+ * writing balance deltas back in batches.
+ *
+ * Every write-behind batch carries an epoch that is stored in ledger_flush_state in the same
+ * transaction, so journal records of batches already in the database can be told apart after a
+ * crash and are not applied twice.
+ */
+final class LedgerStore {
+
+    static final class LoadedAccount {
+        BigDecimal balance;
+        // 加载时的冻结金额；内存账本账户不再接受新冻结，已有冻结只会减少，因此按加载值校验是保守的
+        final BigDecimal heldBalance;
+        final boolean active;
+
+        LoadedAccount(BigDecimal balance, BigDecimal heldBalance, boolean active) {
+            this.balance = balance;
+            this.heldBalance = heldBalance;
+            this.active = active;
+        }
+    }
+
+    static final String RECOVERY_JOURNAL = "recovery";
+
+    private static final String ADD_TO_BALANCE =
+            "UPDATE accounts SET balance = balance + ?, updated_at = ? WHERE account_number = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    LedgerStore(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    LoadedAccount load(String accountNumber) {
+        List<LoadedAccount> rows = jdbcTemplate.query(
+                "SELECT balance, COALESCE(held_balance, 0) AS held_balance, status FROM accounts WHERE account_number = ?",
+                (rs, rowNum) -> new LoadedAccount(rs.getBigDecimal("balance"), rs.getBigDecimal("held_balance"),
+                        "ACTIVE".equals(rs.getString("status"))),
+                accountNumber);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    long flushedEpoch(String journal) {
+        List<Long> epochs = jdbcTemplate.queryForList(
+                "SELECT epoch FROM ledger_flush_state WHERE journal = ?", Long.class, journal);
+        return epochs.isEmpty() ? 0 : epochs.get(0);
+    }
+
+    /**
+     * Adds the deltas to the account balances and records the epoch in one transaction. Deltas
+     * rather than absolute balances, so changes made to the same rows outside the ledger are kept.
+     */
+    void writeDeltas(String journal, long epoch, Map<String, BigDecimal> deltas) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(ADD_TO_BALANCE, deltaArgs(deltas, now));
+            upsertEpoch(journal, epoch, now);
+        });
+    }
+
+    /**
+     * Applies journal state left behind by a crash: the deltas of batches that never reached the
+     * database, then the credit legs of transfers whose debit was journaled but whose credit never
+     * was. The recovery epoch is stored in the same transaction, so a recovery interrupted before
+     * the journals were deleted is not applied again.
+     */
+    void recover(long recoveryEpoch, Map<String, BigDecimal> deltas, Map<String, BigDecimal> missingCredits) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(ADD_TO_BALANCE, deltaArgs(deltas, now));
+            jdbcTemplate.batchUpdate(ADD_TO_BALANCE, deltaArgs(missingCredits, now));
+            upsertEpoch(RECOVERY_JOURNAL, recoveryEpoch, now);
+        });
+    }
+
+    private void upsertEpoch(String journal, long epoch, Timestamp now) {
+        jdbcTemplate.update("INSERT INTO ledger_flush_state (journal, epoch, updated_at) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE epoch = GREATEST(epoch, VALUES(epoch)), updated_at = VALUES(updated_at)",
+                journal, epoch, now);
+    }
+
+    private static List<Object[]> deltaArgs(Map<String, BigDecimal> deltas, Timestamp now) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((accountNumber, delta) -> args.add(new Object[]{delta, now, accountNumber}));
+        return args;
+    }
+}
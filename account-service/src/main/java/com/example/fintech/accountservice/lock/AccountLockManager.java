@@ -0,0 +1,146 @@
+package com.example.fintech.accountservice.lock;
+
+import com.example.fintech.common.exception.AccountLockTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped in-JVM locks keyed by account number.
+ *
+ * Locks are always taken in ascending stripe order. Two account numbers can share a stripe,
+ * so ordering by stripe (which is derived from the account number) is the only order that is
+ * consistent across all callers and therefore deadlock free.
+ */
+@Component
+public class AccountLockManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountLockManager.class);
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long timeoutMillis;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    public AccountLockManager(@Value("${account.lock.stripes:1024}") int stripeCount,
+                              @Value("${account.lock.timeout-ms:5000}") long timeoutMillis) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Locks the given accounts until the current Spring transaction completes
+     * (commit or rollback), so no other thread can read a balance that is about to change.
+     */
+    public void lockForTransaction(String... accountNumbers) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Account locks require an active transaction");
+        }
+
+        List<ReentrantLock> held = acquire(accountNumbers);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                release(held);
+            }
+        });
+    }
+
+    private List<ReentrantLock> acquire(String... accountNumbers) {
+        TreeSet<Integer> stripeIndexes = new TreeSet<>();
+        for (String accountNumber : accountNumbers) {
+            stripeIndexes.add(stripeFor(accountNumber));
+        }
+
+        List<ReentrantLock> held = new ArrayList<>(stripeIndexes.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        try {
+            for (int index : stripeIndexes) {
+                ReentrantLock lock = stripes[index];
+                if (!lock.tryLock()) {
+                    contendedAcquisitions.increment();
+                    long start = System.nanoTime();
+                    boolean locked = lock.tryLock(deadline - start, TimeUnit.NANOSECONDS);
+                    waitNanos.add(System.nanoTime() - start);
+
+                    if (!locked) {
+                        timeouts.increment();
+                        logger.warn("Timed out after {} ms waiting for account lock, accounts: {}",
+                                timeoutMillis, String.join(",", accountNumbers));
+                        throw new AccountLockTimeoutException("Account is busy, please retry");
+                    }
+                }
+                held.add(lock);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(held);
+            throw new AccountLockTimeoutException("Interrupted while waiting for account lock");
+        } catch (RuntimeException e) {
+            release(held);
+            throw e;
+        }
+
+        acquisitions.increment();
+        return held;
+    }
+
+    private void release(List<ReentrantLock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+        held.clear();
+    }
+
+    private int stripeFor(String accountNumber) {
+        int h = accountNumber.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public Map<String, Object> getMetrics() {
+        int lockedStripes = 0;
+        int queuedThreads = 0;
+        for (ReentrantLock lock : stripes) {
+            if (lock.isLocked()) {
+                lockedStripes++;
+            }
+            queuedThreads += lock.getQueueLength();
+        }
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("stripes", stripes.length);
+        metrics.put("acquisitions", acquisitions.sum());
+        metrics.put("contendedAcquisitions", contendedAcquisitions.sum());
+        metrics.put("timeouts", timeouts.sum());
+        metrics.put("totalWaitMillis", TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()));
+        metrics.put("lockedStripes", lockedStripes);
+        metrics.put("queuedThreads", queuedThreads);
+        return metrics;
+    }
+}
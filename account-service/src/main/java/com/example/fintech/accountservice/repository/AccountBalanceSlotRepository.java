@@ -0,0 +1,51 @@
+package com.example.fintech.accountservice.repository;
+
+import com.example.fintech.common.entity.AccountBalanceSlot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface AccountBalanceSlotRepository extends JpaRepository<AccountBalanceSlot, Long> {
+
+    List<AccountBalanceSlot> findByAccountNumber(String accountNumber);
+
+    @Query("SELECT COALESCE(SUM(s.balance), 0) FROM AccountBalanceSlot s WHERE s.accountNumber = :accountNumber")
+    BigDecimal sumBalanceByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    interface SlotBalance {
+        Integer getSlotIndex();
+        BigDecimal getBalance();
+    }
+
+    // 按槽位顺序加锁并直接读取最新余额，扣款清扫和合并任务使用同一加锁顺序
+    @Query(value = "SELECT slot_index AS slotIndex, balance AS balance FROM account_balance_slots " +
+            "WHERE account_number = :accountNumber ORDER BY slot_index FOR UPDATE", nativeQuery = true)
+    List<SlotBalance> lockSlotBalances(@Param("accountNumber") String accountNumber);
+
+    @Modifying
+    @Query("UPDATE AccountBalanceSlot s SET s.balance = 0, s.updatedAt = :updatedAt WHERE s.accountNumber = :accountNumber")
+    int resetSlots(@Param("accountNumber") String accountNumber, @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying
+    @Query("UPDATE AccountBalanceSlot s SET s.balance = s.balance + :amount, s.updatedAt = :updatedAt " +
+            "WHERE s.accountNumber = :accountNumber AND s.slotIndex = :slotIndex")
+    int creditSlot(@Param("accountNumber") String accountNumber,
+                   @Param("slotIndex") int slotIndex,
+                   @Param("amount") BigDecimal amount,
+                   @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying
+    @Query("UPDATE AccountBalanceSlot s SET s.balance = s.balance - :amount, s.updatedAt = :updatedAt " +
+            "WHERE s.accountNumber = :accountNumber AND s.slotIndex = :slotIndex AND s.balance >= :amount")
+    int debitSlotIfSufficient(@Param("accountNumber") String accountNumber,
+                              @Param("slotIndex") int slotIndex,
+                              @Param("amount") BigDecimal amount,
+                              @Param("updatedAt") LocalDateTime updatedAt);
+}
@@ -0,0 +1,19 @@
+package com.example.fintech.accountservice.repository;
+
+import com.example.fintech.common.entity.AccountNumberSequence;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AccountNumberSequenceRepository extends JpaRepository<AccountNumberSequence, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM AccountNumberSequence s WHERE s.sequenceName = :sequenceName")
+    Optional<AccountNumberSequence> lockBySequenceName(@Param("sequenceName") String sequenceName);
+}
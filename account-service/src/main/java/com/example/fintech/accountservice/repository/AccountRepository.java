@@ -2,10 +2,14 @@ package com.example.fintech.accountservice.repository;
 
 import com.example.fintech.common.entity.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,4 +22,74 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
     List<Account> findAllByUserId(@Param("userId") Long userId);
 
     boolean existsByAccountNumber(String accountNumber);
-}
\ No newline at end of file
+
+    @Query("SELECT a.balance FROM Account a WHERE a.accountNumber = :accountNumber")
+    Optional<BigDecimal> findBalanceByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    // 锁定账户行并返回最新可用余额（扣除冻结金额），不经过持久化上下文中可能过期的实体
+    @Query(value = "SELECT balance - held_balance FROM accounts WHERE account_number = :accountNumber FOR UPDATE",
+            nativeQuery = true)
+    Optional<BigDecimal> lockAvailableBalanceByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    interface AccountBalance {
+        String getAccountNumber();
+        BigDecimal getBalance();
+    }
+
+    // 条件UPDATE之前锁定账户行并读出余额：事件的新旧余额由它和金额算出，UPDATE之后无需回查
+    @Query(value = "SELECT account_number AS accountNumber, balance AS balance FROM accounts " +
+            "WHERE account_number IN (:accountNumbers) ORDER BY account_number FOR UPDATE", nativeQuery = true)
+    List<AccountBalance> lockBalances(@Param("accountNumbers") Collection<String> accountNumbers);
+
+    @Query("SELECT a FROM Account a WHERE a.balanceSlots > 0")
+    List<Account> findAllWithBalanceSlots();
+
+    // 条件扣款：余额充足且账户为ACTIVE时才更新，返回受影响行数（0表示被拒绝）
+    @Modifying
+    @Query("UPDATE Account a SET a.balance = a.balance - :amount, a.updatedAt = :updatedAt " +
+            "WHERE a.accountNumber = :accountNumber AND a.userId = :userId " +
+            "AND a.balance - a.heldBalance >= :amount AND a.status = 'ACTIVE'")
+    int debitIfSufficient(@Param("accountNumber") String accountNumber,
+                          @Param("userId") Long userId,
+                          @Param("amount") BigDecimal amount,
+                          @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying
+    @Query("UPDATE Account a SET a.balance = a.balance + :amount, a.updatedAt = :updatedAt " +
+            "WHERE a.accountNumber = :accountNumber AND a.status = 'ACTIVE'")
+    int creditIfActive(@Param("accountNumber") String accountNumber,
+                       @Param("amount") BigDecimal amount,
+                       @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Modifying
+    @Query("UPDATE Account a SET a.balance = a.balance + :amount, a.updatedAt = :updatedAt " +
+            "WHERE a.accountNumber = :accountNumber AND a.userId = :userId AND a.status = 'ACTIVE'")
+    int creditOwnedIfActive(@Param("accountNumber") String accountNumber,
+                            @Param("userId") Long userId,
+                            @Param("amount") BigDecimal amount,
+                            @Param("updatedAt") LocalDateTime updatedAt);
+
+    // 撤回入账：可用余额不足（资金已被转走）时返回0，不把账户扣成负数；不校验状态，冻结账户也要能撤回
+    @Modifying
+    @Query("UPDATE Account a SET a.balance = a.balance - :amount, a.updatedAt = :updatedAt " +
+            "WHERE a.accountNumber = :accountNumber AND a.balance - a.heldBalance >= :amount")
+    int reverseCreditIfAvailable(@Param("accountNumber") String accountNumber,
+                                 @Param("amount") BigDecimal amount,
+                                 @Param("updatedAt") LocalDateTime updatedAt);
+
+    // 无条件调整余额，仅用于补偿已生效的操作
+    @Modifying
+    @Query("UPDATE Account a SET a.balance = a.balance + :delta, a.updatedAt = :updatedAt " +
+            "WHERE a.accountNumber = :accountNumber")
+    int adjustBalance(@Param("accountNumber") String accountNumber,
+                      @Param("delta") BigDecimal delta,
+                      @Param("updatedAt") LocalDateTime updatedAt);
+
+    // 冻结：可用余额充足时增加冻结金额，与 funds_holds 插入在同一事务中
+    @Modifying
+    @Query("UPDATE Account a SET a.heldBalance = a.heldBalance + :amount, a.updatedAt = :updatedAt " +
+            "WHERE a.accountNumber = :accountNumber AND a.balance - a.heldBalance >= :amount AND a.status = 'ACTIVE'")
+    int holdIfAvailable(@Param("accountNumber") String accountNumber,
+                        @Param("amount") BigDecimal amount,
+                        @Param("updatedAt") LocalDateTime updatedAt);
+}
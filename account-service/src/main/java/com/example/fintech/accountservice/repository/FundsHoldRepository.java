@@ -0,0 +1,64 @@
+package com.example.fintech.accountservice.repository;
+
+import com.example.fintech.common.entity.FundsHold;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FundsHoldRepository extends JpaRepository<FundsHold, Long> {
+
+    Optional<FundsHold> findByHoldId(String holdId);
+
+    // 扣款与结束冻结在同一条多表UPDATE中完成；返回0表示冻结不存在、已结束或已过期（不过期的冻结 expires_at 为空）
+    @Modifying
+    @Query(value = "UPDATE accounts a JOIN funds_holds h ON h.account_number = a.account_number " +
+            "SET a.balance = a.balance - h.amount, a.held_balance = a.held_balance - h.amount, a.updated_at = :now, " +
+            "h.status = 'CAPTURED', h.updated_at = :now " +
+            "WHERE h.hold_id = :holdId AND h.status = 'ACTIVE' AND (h.expires_at IS NULL OR h.expires_at >= :now)",
+            nativeQuery = true)
+    int capture(@Param("holdId") String holdId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE accounts a JOIN funds_holds h ON h.account_number = a.account_number " +
+            "SET a.held_balance = a.held_balance - h.amount, a.updated_at = :now, " +
+            "h.status = 'RELEASED', h.updated_at = :now " +
+            "WHERE h.hold_id = :holdId AND h.status = 'ACTIVE'", nativeQuery = true)
+    int release(@Param("holdId") String holdId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE accounts a JOIN funds_holds h ON h.account_number = a.account_number " +
+            "SET a.balance = a.balance + h.amount, a.updated_at = :now, " +
+            "h.status = 'RELEASED', h.updated_at = :now " +
+            "WHERE h.hold_id = :holdId AND h.status = 'CAPTURED'", nativeQuery = true)
+    int refundCaptured(@Param("holdId") String holdId, @Param("now") LocalDateTime now);
+
+    // 跳过正被扣款/释放锁住的冻结，下一轮再处理
+    @Query(value = "SELECT id FROM funds_holds WHERE status = 'ACTIVE' AND expires_at < :now " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockExpiredIds(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Query(value = "SELECT id FROM funds_holds WHERE status = 'ACTIVE' AND expires_at < :now " +
+            "AND account_number NOT IN (:excluded) ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockExpiredIdsExcluding(@Param("now") LocalDateTime now, @Param("excluded") Collection<String> excluded,
+                                       @Param("limit") int limit);
+
+    // 同一账户可能有多笔过期冻结，先按账户汇总再更新，多表UPDATE中每个账户行只会被更新一次
+    @Modifying
+    @Query(value = "UPDATE accounts a JOIN (SELECT account_number, SUM(amount) AS total FROM funds_holds " +
+            "WHERE id IN (:ids) GROUP BY account_number) e ON e.account_number = a.account_number " +
+            "SET a.held_balance = a.held_balance - e.total, a.updated_at = :now", nativeQuery = true)
+    int releaseHeldAmounts(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE FundsHold h SET h.status = com.example.fintech.common.enums.HoldStatus.EXPIRED, " +
+            "h.updatedAt = :now WHERE h.id IN :ids")
+    int markExpired(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
+}
@@ -1,95 +1,254 @@
 package com.example.fintech.accountservice.saga;
 
-import com.example.fintech.common.saga.SagaStep;
-import com.example.fintech.common.entity.Account;
+import com.example.fintech.accountservice.cache.AccountSnapshotCache;
+import com.example.fintech.accountservice.ledger.LedgerEngine;
 import com.example.fintech.accountservice.repository.AccountRepository;
+import com.example.fintech.accountservice.service.BalanceSlotService;
+import com.example.fintech.accountservice.service.FundsHoldService;
+import com.example.fintech.common.entity.Account;
+import com.example.fintech.common.exception.AccountNotFoundException;
 import com.example.fintech.common.exception.InsufficientFundsException;
+import com.example.fintech.common.exception.InvalidTransactionException;
+import com.example.fintech.common.saga.SagaOrchestrator;
+import com.example.fintech.common.saga.SagaStep;
+import com.example.fintech.common.saga.SagaStepFactory;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @Component
-public class TransferSagaSteps {
+public class TransferSagaSteps implements SagaStepFactory {
+
+    public static final String SAGA_TYPE = "ACCOUNT_TRANSFER";
 
     @Autowired
     private AccountRepository accountRepository;
 
-    public static class ReserveFromAccountStep implements SagaStep {
-        private final AccountRepository accountRepository;
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+
+    @Autowired
+    private FundsHoldService fundsHoldService;
+
+    @Autowired
+    private AccountSnapshotCache accountSnapshotCache;
+
+    @Autowired
+    private SagaOrchestrator sagaOrchestrator;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // holdId 随载荷持久化，恢复时重建的步骤操作的是同一笔冻结
+    public static Map<String, String> payload(String fromAccount, String toAccount, BigDecimal amount) {
+        return Map.of("fromAccount", fromAccount, "toAccount", toAccount, "amount", amount.toPlainString(),
+                "holdId", UUID.randomUUID().toString());
+    }
+
+    @Override
+    public String getSagaType() {
+        return SAGA_TYPE;
+    }
+
+    @Override
+    public List<SagaStep> createSteps(Map<String, String> payload) {
+        BigDecimal amount = new BigDecimal(payload.get("amount"));
+        String holdId = payload.get("holdId");
+        if (holdId == null) {
+            // 改用冻结之前持久化的Saga：扣款是直接扣减余额，恢复时需要退回
+            return List.of(
+                    new LegacyDebitFromAccountStep(payload.get("fromAccount"), amount),
+                    new CreditToAccountStep(payload.get("toAccount"), amount));
+        }
+        return List.of(
+                new ReserveFromAccountStep(holdId, payload.get("fromAccount"), amount),
+                new CreditToAccountStep(payload.get("toAccount"), amount),
+                new CaptureHoldStep(holdId));
+    }
+
+    // 每个步骤是一个独立的本地事务，在Saga执行器线程上运行
+    private CompletionStage<Void> inTransaction(Runnable action) {
+        return CompletableFuture.runAsync(
+                () -> transactionTemplate.executeWithoutResult(status -> action.run()),
+                sagaOrchestrator.getExecutor());
+    }
+
+    private Account loadAccount(String accountNumber) {
+        return accountRepository.findByAccountNumber(accountNumber)
+                .orElseThrow(() -> new AccountNotFoundException("Account not found: " + accountNumber));
+    }
+
+    // 只冻结资金，不改动余额；失败的转账释放冻结即可，无需回写余额。
+    // 冻结由Saga（含恢复任务）捕获或释放；远长于恢复周期的有效期只用来回收Saga日志丢失后的孤儿冻结
+    public class ReserveFromAccountStep implements SagaStep {
+        private final String holdId;
         private final String fromAccountNumber;
         private final BigDecimal amount;
-        private Account fromAccount;
 
-        public ReserveFromAccountStep(AccountRepository accountRepository,
-                                      String fromAccountNumber, BigDecimal amount) {
-            this.accountRepository = accountRepository;
+        public ReserveFromAccountStep(String holdId, String fromAccountNumber, BigDecimal amount) {
+            this.holdId = holdId;
             this.fromAccountNumber = fromAccountNumber;
             this.amount = amount;
         }
 
         @Override
-        public void execute() {
-            fromAccount = accountRepository.findByAccountNumber(fromAccountNumber)
-                    .orElseThrow(() -> new RuntimeException("from account not found"));
-
-            if (fromAccount.getBalance().compareTo(amount) < 0) {
-                throw new InsufficientFundsException("insufficient funds");
-            }
-
-            fromAccount.setBalance(fromAccount.getBalance().subtract(amount));
-            accountRepository.save(fromAccount);
+        public CompletionStage<Void> execute() {
+            return inTransaction(() -> fundsHoldService.placeHold(holdId, fromAccountNumber, amount));
         }
 
         @Override
-        public void compensate() {
-            if (fromAccount != null) {
-                fromAccount.setBalance(fromAccount.getBalance().add(amount));
-                accountRepository.save(fromAccount);
-            }
+        public CompletionStage<Void> compensate() {
+            return inTransaction(() -> fundsHoldService.release(holdId, fromAccountNumber, amount));
         }
 
         @Override
         public String getStepName() {
             return "ReserveFromAccount";
         }
+
+        @Override
+        public boolean isCompensationSafeWhenInDoubt() {
+            return true;
+        }
     }
 
-    public static class CreditToAccountStep implements SagaStep {
-        private final AccountRepository accountRepository;
+    public class CreditToAccountStep implements SagaStep {
         private final String toAccountNumber;
         private final BigDecimal amount;
-        private Account toAccount;
 
-        public CreditToAccountStep(AccountRepository accountRepository,
-                                   String toAccountNumber, BigDecimal amount) {
-            this.accountRepository = accountRepository;
+        public CreditToAccountStep(String toAccountNumber, BigDecimal amount) {
             this.toAccountNumber = toAccountNumber;
             this.amount = amount;
         }
 
         @Override
-        public void execute() {
-            toAccount = accountRepository.findByAccountNumber(toAccountNumber)
-                    .orElseThrow(() -> new RuntimeException("To account not found"));
-
-            // Credit amount to account
-            toAccount.setBalance(toAccount.getBalance().add(amount));
-            accountRepository.save(toAccount);
+        public CompletionStage<Void> execute() {
+            return inTransaction(() -> {
+                // 内存账本账户的余额不在数据库中，不能直接入账
+                if (ledgerEngine != null && ledgerEngine.manages(toAccountNumber)) {
+                    throw new InvalidTransactionException("Ledger accounts cannot join saga transfers");
+                }
+                // 热点账户入账落到子余额槽，避免所有入账争用同一行
+                if (balanceSlotService.isSlotted(toAccountNumber)) {
+                    balanceSlotService.credit(toAccountNumber, amount);
+                } else if (accountRepository.creditIfActive(toAccountNumber, amount, LocalDateTime.now()) == 0) {
+                    loadAccount(toAccountNumber);
+                    throw new InvalidTransactionException("Account is not active for receive");
+                }
+                accountSnapshotCache.evictAfterCommit(toAccountNumber);
+            });
         }
 
         @Override
-        public void compensate() {
-            if (toAccount != null) {
-                // Reverse the credit
-                toAccount.setBalance(toAccount.getBalance().subtract(amount));
-                accountRepository.save(toAccount);
-            }
+        public CompletionStage<Void> compensate() {
+            return inTransaction(() -> {
+                if (balanceSlotService.isSlotted(toAccountNumber)) {
+                    balanceSlotService.debit(loadAccount(toAccountNumber), amount);
+                } else if (accountRepository.reverseCreditIfAvailable(toAccountNumber, amount, LocalDateTime.now()) == 0) {
+                    // 收款方已动用这笔资金：补偿失败，Saga 标记为 FAILED 等待人工处理
+                    throw new InsufficientFundsException("Cannot reverse credit to " + toAccountNumber + ": funds already used");
+                }
+                accountSnapshotCache.evictAfterCommit(toAccountNumber);
+            });
         }
 
         @Override
         public String getStepName() {
             return "CreditToAccount";
         }
+
+        // 只有扣款成功后才入账，避免收款方先拿到资金再被回收
+        @Override
+        public Set<String> dependsOn() {
+            return Set.of("ReserveFromAccount");
+        }
+    }
+
+    /**
+     * Debit step of sagas persisted before transfers used holds. Only reached through recovery,
+     * which compensates it by refunding the direct debit.
+     */
+    public class LegacyDebitFromAccountStep implements SagaStep {
+        private final String fromAccountNumber;
+        private final BigDecimal amount;
+
+        public LegacyDebitFromAccountStep(String fromAccountNumber, BigDecimal amount) {
+            this.fromAccountNumber = fromAccountNumber;
+            this.amount = amount;
+        }
+
+        @Override
+        public CompletionStage<Void> execute() {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Legacy transfer sagas can only be recovered"));
+        }
+
+        @Override
+        public CompletionStage<Void> compensate() {
+            return inTransaction(() -> {
+                accountRepository.adjustBalance(fromAccountNumber, amount, LocalDateTime.now());
+                accountSnapshotCache.evictAfterCommit(fromAccountNumber);
+            });
+        }
+
+        // 与旧版步骤同名，恢复时按日志中的步骤名匹配
+        @Override
+        public String getStepName() {
+            return "ReserveFromAccount";
+        }
+    }
+
+    public class CaptureHoldStep implements SagaStep {
+        private final String holdId;
+
+        public CaptureHoldStep(String holdId) {
+            this.holdId = holdId;
+        }
+
+        @Override
+        public CompletionStage<Void> execute() {
+            return inTransaction(() -> fundsHoldService.capture(holdId));
+        }
+
+        @Override
+        public CompletionStage<Void> compensate() {
+            return inTransaction(() -> fundsHoldService.reverse(holdId));
+        }
+
+        @Override
+        public String getStepName() {
+            return "CaptureHold";
+        }
+
+        @Override
+        public Set<String> dependsOn() {
+            return Set.of("CreditToAccount");
+        }
+
+        @Override
+        public boolean isCompensationSafeWhenInDoubt() {
+            return true;
+        }
     }
 }
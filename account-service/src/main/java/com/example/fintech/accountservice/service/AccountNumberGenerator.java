@@ -0,0 +1,115 @@
+package com.example.fintech.accountservice.service;
+
+import com.example.fintech.accountservice.repository.AccountNumberSequenceRepository;
+import com.example.fintech.common.entity.AccountNumberSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Hands out account numbers from blocks leased off the account_number_sequences table.
+ *
+ * A number is "ACC" + a 9-digit sequence value + a Luhn check digit. The sequence starts at
+ * 100000000, so generated numbers never start with "ACC0" and cannot collide with the legacy
+ * random numbers, which were always zero-padded. Numbers left in a block when the service
+ * stops are simply skipped.
+ */
+@Component
+public class AccountNumberGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountNumberGenerator.class);
+
+    static final String SEQUENCE_NAME = "account_number";
+    static final long FIRST_VALUE = 100_000_000L;
+    static final long MAX_VALUE = 999_999_999L;
+
+    @Autowired
+    private AccountNumberSequenceRepository sequenceRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${account.number.block-size:1000}")
+    private int blockSize;
+
+    private TransactionTemplate leaseTemplate;
+
+    // 当前号段 [next, limit)，由 this 保护
+    private long next;
+    private long limit;
+
+    @PostConstruct
+    public void init() {
+        // 号段租用必须独立提交，不能随开户事务回滚，否则不同实例可能拿到同一号段
+        leaseTemplate = new TransactionTemplate(transactionManager);
+        leaseTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public synchronized String nextAccountNumber() {
+        if (next >= limit) {
+            leaseBlock();
+        }
+        return format(next++);
+    }
+
+    private void leaseBlock() {
+        long start;
+        try {
+            start = leaseTemplate.execute(status -> lease());
+        } catch (DataIntegrityViolationException e) {
+            // 另一实例同时初始化了序列行，重新加锁读取即可
+            start = leaseTemplate.execute(status -> lease());
+        }
+        next = start;
+        limit = Math.min(start + blockSize, MAX_VALUE + 1);
+        logger.info("Leased account number block [{}, {})", next, limit);
+    }
+
+    private long lease() {
+        AccountNumberSequence sequence = sequenceRepository.lockBySequenceName(SEQUENCE_NAME)
+                .orElseGet(() -> {
+                    AccountNumberSequence created = new AccountNumberSequence();
+                    created.setSequenceName(SEQUENCE_NAME);
+                    created.setNextValue(FIRST_VALUE);
+                    return created;
+                });
+
+        long start = sequence.getNextValue();
+        if (start > MAX_VALUE) {
+            throw new IllegalStateException("Account number sequence exhausted");
+        }
+        sequence.setNextValue(start + blockSize);
+        sequenceRepository.saveAndFlush(sequence);
+        return start;
+    }
+
+    static String format(long value) {
+        String body = Long.toString(value);
+        return "ACC" + body + luhnCheckDigit(body);
+    }
+
+    static int luhnCheckDigit(String digits) {
+        int sum = 0;
+        boolean doubleIt = true;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int d = digits.charAt(i) - '0';
+            if (doubleIt) {
+                d *= 2;
+                if (d > 9) {
+                    d -= 9;
+                }
+            }
+            sum += d;
+            doubleIt = !doubleIt;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
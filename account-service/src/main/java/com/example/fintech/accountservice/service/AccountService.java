@@ -1,5 +1,6 @@
 package com.example.fintech.accountservice.service;
 
+import com.example.fintech.accountservice.cache.AccountSnapshot;
 import com.example.fintech.common.entity.Account;
 import java.math.BigDecimal;
 import java.util.List;
@@ -8,6 +9,7 @@ public interface AccountService {
     Account createAccount(Long userId, String username, String accountType, String currency);  // 添加username参数
     Account getAccountByUserId(Long userId);
     Account getAccountByAccountNumber(String accountNumber);
+    AccountSnapshot getAccountSnapshot(String accountNumber);
     List<Account> getAccountsByUserId(Long userId);
     BigDecimal getBalance(String accountNumber);
     boolean deposit(String accountNumber, BigDecimal amount, Long userId);
@@ -7,26 +7,62 @@ import com.example.fintech.common.exception.AccountNotFoundException;
 import com.example.fintech.common.exception.InsufficientFundsException;
 import com.example.fintech.common.exception.InvalidTransactionException;
 import com.example.fintech.common.service.EventPublisher;
+import com.example.fintech.accountservice.cache.AccountSnapshot;
+import com.example.fintech.accountservice.cache.AccountSnapshotCache;
+import com.example.fintech.accountservice.ledger.LedgerBalanceChange;
+import com.example.fintech.accountservice.ledger.LedgerEngine;
+import com.example.fintech.accountservice.lock.AccountLockManager;
 import com.example.fintech.accountservice.repository.AccountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 @Service
 @Transactional
 public class AccountServiceImpl implements AccountService {
 
+    private static final Logger logger = LoggerFactory.getLogger(AccountServiceImpl.class);
+
     @Autowired
     private AccountRepository accountRepository;
 
     @Autowired
     private EventPublisher eventPublisher;
 
+    @Autowired
+    private AccountLockManager accountLockManager;
+
+    @Autowired
+    private AccountNumberGenerator accountNumberGenerator;
+
+    @Autowired
+    private AccountSnapshotCache accountSnapshotCache;
+
+    // true: 使用条件UPDATE单次往返完成扣款/入账；false: 加锁后读-改-写实体
+    @Value("${account.balance-update.conditional:false}")
+    private boolean conditionalBalanceUpdate;
+
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+
+    // 仅在 account.ledger.enabled=true 时存在，负责热点账户的内存记账
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
     @Override
     public Account createAccount(Long userId, String username, String accountType, String currency) {
         // 检查是否已存在相同类型的账户
@@ -70,6 +106,13 @@ public class AccountServiceImpl implements AccountService {
                 .orElseThrow(() -> new AccountNotFoundException("Account not found: " + accountNumber));
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public AccountSnapshot getAccountSnapshot(String accountNumber) {
+        return accountSnapshotCache.get(accountNumber,
+                () -> AccountSnapshot.from(getAccountByAccountNumber(accountNumber)));
+    }
+
     @Override
     public List<Account> getAccountsByUserId(Long userId) {
         return accountRepository.findAllByUserId(userId);
@@ -77,13 +120,29 @@ public class AccountServiceImpl implements AccountService {
 
     @Override
     public BigDecimal getBalance(String accountNumber) {
-        Account account = getAccountByAccountNumber(accountNumber);
-        return account.getBalance();
+        if (isLedgerAccount(accountNumber)) {
+            return ledgerEngine.getBalance(accountNumber)
+                    .orElseGet(() -> getAccountSnapshot(accountNumber).getBalance());
+        }
+        if (balanceSlotService.isSlotted(accountNumber)) {
+            return balanceSlotService.getTotalBalance(accountNumber);
+        }
+        return getAccountSnapshot(accountNumber).getBalance();
     }
 
     @Override
     public boolean deposit(String accountNumber, BigDecimal amount, Long userId) {
         validateAmount(amount);
+        if (isLedgerAccount(accountNumber)) {
+            return depositWithLedger(accountNumber, amount, userId);
+        }
+        if (balanceSlotService.isSlotted(accountNumber)) {
+            return depositToSlots(accountNumber, amount, userId);
+        }
+        if (conditionalBalanceUpdate) {
+            return depositConditionally(accountNumber, amount, userId);
+        }
+        accountLockManager.lockForTransaction(accountNumber);
 
         Account account = getAccountByAccountNumber(accountNumber);
         validateOwnership(account, userId);
@@ -103,13 +162,23 @@ public class AccountServiceImpl implements AccountService {
     @Override
     public boolean withdraw(String accountNumber, BigDecimal amount, Long userId) {
         validateAmount(amount);
+        if (isLedgerAccount(accountNumber)) {
+            return withdrawWithLedger(accountNumber, amount, userId);
+        }
+        if (balanceSlotService.isSlotted(accountNumber)) {
+            return withdrawFromSlots(accountNumber, amount, userId);
+        }
+        if (conditionalBalanceUpdate) {
+            return withdrawConditionally(accountNumber, amount, userId);
+        }
+        accountLockManager.lockForTransaction(accountNumber);
 
         Account account = getAccountByAccountNumber(accountNumber);
         validateOwnership(account, userId);
         validateAccountStatus(account, "withdraw");
 
         BigDecimal oldBalance = account.getBalance();
-        if (oldBalance.compareTo(amount) < 0) {
+        if (availableBalance(account).compareTo(amount) < 0) {
             throw new InsufficientFundsException("Insufficient funds");
         }
 
@@ -126,6 +195,17 @@ public class AccountServiceImpl implements AccountService {
     public boolean transfer(String fromAccountNumber, String toAccountNumber,
                             BigDecimal amount, Long userId) {
         validateAmount(amount);
+        if (isLedgerAccount(fromAccountNumber) || isLedgerAccount(toAccountNumber)) {
+            return transferWithLedger(fromAccountNumber, toAccountNumber, amount, userId);
+        }
+        if (balanceSlotService.isSlotted(fromAccountNumber) || balanceSlotService.isSlotted(toAccountNumber)) {
+            return transferWithSlots(fromAccountNumber, toAccountNumber, amount, userId);
+        }
+        if (conditionalBalanceUpdate) {
+            return transferConditionally(fromAccountNumber, toAccountNumber, amount, userId);
+        }
+        // 按固定顺序锁定两个账户，避免并发转账互相死锁
+        accountLockManager.lockForTransaction(fromAccountNumber, toAccountNumber);
 
         Account fromAccount = getAccountByAccountNumber(fromAccountNumber);
         Account toAccount = getAccountByAccountNumber(toAccountNumber);
@@ -134,7 +214,7 @@ public class AccountServiceImpl implements AccountService {
         validateAccountStatus(fromAccount, "transfer");
         validateAccountStatus(toAccount, "receive");
 
-        if (fromAccount.getBalance().compareTo(amount) < 0) {
+        if (availableBalance(fromAccount).compareTo(amount) < 0) {
             throw new InsufficientFundsException("Insufficient funds for transfer");
         }
 
@@ -155,13 +235,247 @@ public class AccountServiceImpl implements AccountService {
         return true;
     }
 
+    private boolean depositConditionally(String accountNumber, BigDecimal amount, Long userId) {
+        BigDecimal oldBalance = lockBalances(accountNumber).get(accountNumber);
+        if (accountRepository.creditOwnedIfActive(accountNumber, userId, amount, LocalDateTime.now()) == 0) {
+            rejectUpdate(accountNumber, userId, amount, "deposit");
+        }
+
+        publishBalanceChangeEvent(accountNumber, oldBalance, oldBalance.add(amount), "DEPOSIT");
+
+        return true;
+    }
+
+    private boolean withdrawConditionally(String accountNumber, BigDecimal amount, Long userId) {
+        BigDecimal oldBalance = lockBalances(accountNumber).get(accountNumber);
+        if (accountRepository.debitIfSufficient(accountNumber, userId, amount, LocalDateTime.now()) == 0) {
+            rejectUpdate(accountNumber, userId, amount, "withdraw");
+        }
+
+        publishBalanceChangeEvent(accountNumber, oldBalance, oldBalance.subtract(amount), "WITHDRAWAL");
+
+        return true;
+    }
+
+    private boolean transferConditionally(String fromAccountNumber, String toAccountNumber,
+                                          BigDecimal amount, Long userId) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, BigDecimal> oldBalances = lockBalances(fromAccountNumber, toAccountNumber);
+
+        // 按账号顺序更新两行，避免与反向转账在数据库行锁上互相死锁；任一失败整体回滚
+        if (fromAccountNumber.compareTo(toAccountNumber) <= 0) {
+            debitForTransfer(fromAccountNumber, userId, amount, now);
+            creditForTransfer(toAccountNumber, amount, now);
+        } else {
+            creditForTransfer(toAccountNumber, amount, now);
+            debitForTransfer(fromAccountNumber, userId, amount, now);
+        }
+
+        BigDecimal fromOldBalance = oldBalances.get(fromAccountNumber);
+        BigDecimal toOldBalance = oldBalances.get(toAccountNumber);
+        publishBalanceChangeEvent(fromAccountNumber, fromOldBalance, fromOldBalance.subtract(amount), "TRANSFER_OUT");
+        publishBalanceChangeEvent(toAccountNumber, toOldBalance, toOldBalance.add(amount), "TRANSFER_IN");
+
+        return true;
+    }
+
+    private void debitForTransfer(String accountNumber, Long userId, BigDecimal amount, LocalDateTime now) {
+        if (accountRepository.debitIfSufficient(accountNumber, userId, amount, now) == 0) {
+            rejectUpdate(accountNumber, userId, amount, "transfer");
+        }
+    }
+
+    private void creditForTransfer(String accountNumber, BigDecimal amount, LocalDateTime now) {
+        if (accountRepository.creditIfActive(accountNumber, amount, now) == 0) {
+            rejectUpdate(accountNumber, null, amount, "receive");
+        }
+    }
+
+    // 锁定账户行并读出更新前的余额；条件UPDATE命中后新余额即旧余额加减金额，无需再读
+    private Map<String, BigDecimal> lockBalances(String... accountNumbers) {
+        Map<String, BigDecimal> balances = new HashMap<>();
+        for (AccountRepository.AccountBalance row : accountRepository.lockBalances(List.of(accountNumbers))) {
+            balances.put(row.getAccountNumber(), row.getBalance());
+        }
+        for (String accountNumber : accountNumbers) {
+            if (!balances.containsKey(accountNumber)) {
+                throw new AccountNotFoundException("Account not found: " + accountNumber);
+            }
+        }
+        return balances;
+    }
+
+    // 条件UPDATE未命中时才回查账户，给出与实体路径一致的异常
+    private void rejectUpdate(String accountNumber, Long userId, BigDecimal amount, String operation) {
+        Account account = getAccountByAccountNumber(accountNumber);
+        if (userId != null) {
+            validateOwnership(account, userId);
+        }
+        validateAccountStatus(account, operation);
+        throw new InsufficientFundsException("transfer".equals(operation)
+                ? "Insufficient funds for transfer" : "Insufficient funds");
+    }
+
+    private boolean depositToSlots(String accountNumber, BigDecimal amount, Long userId) {
+        Account account = getAccountByAccountNumber(accountNumber);
+        validateOwnership(account, userId);
+        validateAccountStatus(account, "deposit");
+
+        balanceSlotService.credit(accountNumber, amount);
+
+        BigDecimal newBalance = balanceSlotService.getTotalBalance(accountNumber);
+        publishBalanceChangeEvent(accountNumber, newBalance.subtract(amount), newBalance, "DEPOSIT");
+
+        return true;
+    }
+
+    private boolean withdrawFromSlots(String accountNumber, BigDecimal amount, Long userId) {
+        Account account = getAccountByAccountNumber(accountNumber);
+        validateOwnership(account, userId);
+        validateAccountStatus(account, "withdraw");
+
+        balanceSlotService.debit(account, amount);
+
+        BigDecimal newBalance = balanceSlotService.getTotalBalance(accountNumber);
+        publishBalanceChangeEvent(accountNumber, newBalance.add(amount), newBalance, "WITHDRAWAL");
+
+        return true;
+    }
+
+    // 任一方为分槽账户：分槽一侧走子余额，另一侧走条件UPDATE，不对热点账户主行加锁
+    private boolean transferWithSlots(String fromAccountNumber, String toAccountNumber,
+                                      BigDecimal amount, Long userId) {
+        Account fromAccount = getAccountByAccountNumber(fromAccountNumber);
+        Account toAccount = getAccountByAccountNumber(toAccountNumber);
+
+        validateOwnership(fromAccount, userId);
+        validateAccountStatus(fromAccount, "transfer");
+        validateAccountStatus(toAccount, "receive");
+
+        LocalDateTime now = LocalDateTime.now();
+        if (balanceSlotService.isSlotted(fromAccountNumber)) {
+            balanceSlotService.debit(fromAccount, amount);
+        } else {
+            debitForTransfer(fromAccountNumber, userId, amount, now);
+        }
+        if (balanceSlotService.isSlotted(toAccountNumber)) {
+            balanceSlotService.credit(toAccountNumber, amount);
+        } else {
+            creditForTransfer(toAccountNumber, amount, now);
+        }
+
+        BigDecimal fromNewBalance = balanceSlotService.getTotalBalance(fromAccountNumber);
+        BigDecimal toNewBalance = balanceSlotService.getTotalBalance(toAccountNumber);
+        publishBalanceChangeEvent(fromAccountNumber, fromNewBalance.add(amount), fromNewBalance, "TRANSFER_OUT");
+        publishBalanceChangeEvent(toAccountNumber, toNewBalance.subtract(amount), toNewBalance, "TRANSFER_IN");
+
+        return true;
+    }
+
+    private boolean isLedgerAccount(String accountNumber) {
+        return ledgerEngine != null && ledgerEngine.manages(accountNumber);
+    }
+
+    private boolean depositWithLedger(String accountNumber, BigDecimal amount, Long userId) {
+        Account account = getAccountByAccountNumber(accountNumber);
+        validateOwnership(account, userId);
+        validateAccountStatus(account, "deposit");
+
+        LedgerBalanceChange change = awaitLedger(ledgerEngine.deposit(accountNumber, amount)).get(0);
+        publishBalanceChangeEvent(accountNumber, change.getOldBalance(), change.getNewBalance(), "DEPOSIT");
+
+        return true;
+    }
+
+    private boolean withdrawWithLedger(String accountNumber, BigDecimal amount, Long userId) {
+        Account account = getAccountByAccountNumber(accountNumber);
+        validateOwnership(account, userId);
+        validateAccountStatus(account, "withdraw");
+
+        LedgerBalanceChange change = awaitLedger(ledgerEngine.withdraw(accountNumber, amount)).get(0);
+        publishBalanceChangeEvent(accountNumber, change.getOldBalance(), change.getNewBalance(), "WITHDRAWAL");
+
+        return true;
+    }
+
+    private boolean transferWithLedger(String fromAccountNumber, String toAccountNumber,
+                                       BigDecimal amount, Long userId) {
+        Account fromAccount = getAccountByAccountNumber(fromAccountNumber);
+        Account toAccount = getAccountByAccountNumber(toAccountNumber);
+
+        validateOwnership(fromAccount, userId);
+        validateAccountStatus(fromAccount, "transfer");
+        validateAccountStatus(toAccount, "receive");
+
+        boolean fromLedger = isLedgerAccount(fromAccountNumber);
+        boolean toLedger = isLedgerAccount(toAccountNumber);
+        LocalDateTime now = LocalDateTime.now();
+
+        if (fromLedger && toLedger) {
+            List<LedgerBalanceChange> changes = awaitLedger(
+                    ledgerEngine.transfer(fromAccountNumber, toAccountNumber, amount));
+            publishBalanceChangeEvent(fromAccountNumber, changes.get(0).getOldBalance(),
+                    changes.get(0).getNewBalance(), "TRANSFER_OUT");
+            publishBalanceChangeEvent(toAccountNumber, changes.get(1).getOldBalance(),
+                    changes.get(1).getNewBalance(), "TRANSFER_IN");
+            return true;
+        }
+
+        // 一侧在账本、一侧在数据库：先做数据库一侧（随事务回滚），再提交账本一侧，事务回滚时对账本反向补偿
+        if (fromLedger) {
+            BigDecimal toOldBalance = lockBalances(toAccountNumber).get(toAccountNumber);
+            creditForTransfer(toAccountNumber, amount, now);
+            LedgerBalanceChange debit = awaitLedger(ledgerEngine.withdraw(fromAccountNumber, amount)).get(0);
+            compensateLedgerOnRollback(() -> ledgerEngine.deposit(fromAccountNumber, amount),
+                    "re-credit " + fromAccountNumber);
+
+            publishBalanceChangeEvent(fromAccountNumber, debit.getOldBalance(), debit.getNewBalance(), "TRANSFER_OUT");
+            publishBalanceChangeEvent(toAccountNumber, toOldBalance, toOldBalance.add(amount), "TRANSFER_IN");
+        } else {
+            BigDecimal fromOldBalance = lockBalances(fromAccountNumber).get(fromAccountNumber);
+            debitForTransfer(fromAccountNumber, userId, amount, now);
+            LedgerBalanceChange credit = awaitLedger(ledgerEngine.deposit(toAccountNumber, amount)).get(0);
+            compensateLedgerOnRollback(() -> ledgerEngine.withdraw(toAccountNumber, amount),
+                    "debit back " + toAccountNumber);
+
+            publishBalanceChangeEvent(fromAccountNumber, fromOldBalance, fromOldBalance.subtract(amount), "TRANSFER_OUT");
+            publishBalanceChangeEvent(toAccountNumber, credit.getOldBalance(), credit.getNewBalance(), "TRANSFER_IN");
+        }
+
+        return true;
+    }
+
+    private List<LedgerBalanceChange> awaitLedger(CompletableFuture<List<LedgerBalanceChange>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void compensateLedgerOnRollback(Supplier<CompletableFuture<List<LedgerBalanceChange>>> compensation,
+                                            String description) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    compensation.get().whenComplete((changes, error) -> {
+                        if (error != null) {
+                            logger.error("Ledger compensation failed ({}), manual reconciliation required",
+                                    description, error);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
     @Override
     public String generateAccountNumber() {
-        String accountNumber;
-        do {
-            accountNumber = "ACC" + String.format("%010d", new Random().nextInt(1000000000));
-        } while (accountRepository.existsByAccountNumber(accountNumber));
-        return accountNumber;
+        return accountNumberGenerator.nextAccountNumber();
     }
 
     // 私有辅助方法
@@ -171,6 +485,11 @@ public class AccountServiceImpl implements AccountService {
         }
     }
 
+    private BigDecimal availableBalance(Account account) {
+        return account.getHeldBalance() == null
+                ? account.getBalance() : account.getBalance().subtract(account.getHeldBalance());
+    }
+
     private void validateOwnership(Account account, Long userId) {
         if (!account.getUserId().equals(userId)) {
             throw new SecurityException("Access denied: You don't own this account");
@@ -185,8 +504,15 @@ public class AccountServiceImpl implements AccountService {
 
     private void publishBalanceChangeEvent(Account account, BigDecimal oldBalance,
                                            BigDecimal newBalance, String operation) {
+        publishBalanceChangeEvent(account.getAccountNumber(), oldBalance, newBalance, operation);
+    }
+
+    private void publishBalanceChangeEvent(String accountNumber, BigDecimal oldBalance,
+                                           BigDecimal newBalance, String operation) {
+        accountSnapshotCache.evictAfterCommit(accountNumber);
+
         AccountBalanceEvent event = new AccountBalanceEvent(
-                account.getAccountNumber(),
+                accountNumber,
                 oldBalance,
                 newBalance,
                 operation,
@@ -0,0 +1,54 @@
+package com.example.fintech.accountservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+@Component
+public class BalanceSlotCompactor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceSlotCompactor.class);
+
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+
+    @Value("${account.balance-slots.accounts:}")
+    private String slottedAccounts;
+
+    @Value("${account.balance-slots.count:8}")
+    private int slotCount;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeSlots() {
+        Arrays.stream(slottedAccounts.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .forEach(accountNumber -> {
+                    try {
+                        balanceSlotService.enableSlots(accountNumber, slotCount);
+                    } catch (Exception e) {
+                        logger.error("Failed to enable balance slots for account {}: {}", accountNumber, e.getMessage());
+                    }
+                });
+        balanceSlotService.refreshSlottedAccounts();
+    }
+
+    @Scheduled(fixedDelayString = "${account.balance-slots.compaction-interval-ms:60000}",
+            initialDelayString = "${account.balance-slots.compaction-interval-ms:60000}")
+    public void compactSlots() {
+        for (String accountNumber : balanceSlotService.refreshSlottedAccounts()) {
+            try {
+                balanceSlotService.compact(accountNumber);
+            } catch (Exception e) {
+                logger.warn("Balance slot compaction failed for account {}: {}", accountNumber, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.fintech.accountservice.service;
+
+import com.example.fintech.accountservice.ledger.LedgerEngine;
+import com.example.fintech.accountservice.repository.AccountBalanceSlotRepository;
+import com.example.fintech.accountservice.repository.AccountRepository;
+import com.example.fintech.common.entity.Account;
+import com.example.fintech.common.entity.AccountBalanceSlot;
+import com.example.fintech.common.event.AccountBalanceEvent;
+import com.example.fintech.common.exception.AccountNotFoundException;
+import com.example.fintech.common.exception.InsufficientFundsException;
+import com.example.fintech.common.exception.InvalidTransactionException;
+import com.example.fintech.common.service.EventPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Sub-balance slots for hot accounts.
+ *
+ * Credits land on a random slot row so concurrent credits do not queue on the account row.
+ * Debits try single slots from a random start, then the main balance, and only sweep across all
+ * rows under lock when no single row can cover the amount. A background job folds slots back into
+ * the main balance.
+ *
+ * Which accounts are slotted is kept per instance. Enabling slots broadcasts a balance event that
+ * makes every instance reload that account's slot count; the compaction job's periodic refresh
+ * covers a lost broadcast.
+ */
+@Service
+@Transactional
+public class BalanceSlotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceSlotService.class);
+
+    public static final String SLOTS_ENABLED_OPERATION = "BALANCE_SLOTS_ENABLED";
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountBalanceSlotRepository slotRepository;
+
+    @Autowired
+    private EventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
+    // 账户号 -> 槽位数量；启用槽位时经余额事件广播到所有实例，合并任务定期从数据库全量刷新兜底
+    private final Map<String, Integer> slotCounts = new ConcurrentHashMap<>();
+
+    public boolean isSlotted(String accountNumber) {
+        return slotCounts.containsKey(accountNumber);
+    }
+
+    public void credit(String accountNumber, BigDecimal amount) {
+        int slot = ThreadLocalRandom.current().nextInt(slotCounts.get(accountNumber));
+        if (slotRepository.creditSlot(accountNumber, slot, amount, LocalDateTime.now()) == 0) {
+            throw new IllegalStateException("Balance slot " + slot + " missing for account " + accountNumber);
+        }
+    }
+
+    public void debit(Account account, BigDecimal amount) {
+        String accountNumber = account.getAccountNumber();
+        LocalDateTime now = LocalDateTime.now();
+
+        // 先试槽位再试主行：随机起点把并发扣款分散到不同槽位行上，不再都先争用主行
+        int slots = slotCounts.get(accountNumber);
+        int start = ThreadLocalRandom.current().nextInt(slots);
+        for (int i = 0; i < slots; i++) {
+            if (slotRepository.debitSlotIfSufficient(accountNumber, (start + i) % slots, amount, now) == 1) {
+                return;
+            }
+        }
+
+        if (accountRepository.debitIfSufficient(accountNumber, account.getUserId(), amount, now) == 1) {
+            return;
+        }
+
+        sweepDebit(account, amount, now);
+    }
+
+    // 单行余额都不够时，锁住主行和全部槽位，跨槽扣减
+    private void sweepDebit(Account account, BigDecimal amount, LocalDateTime now) {
+        String accountNumber = account.getAccountNumber();
+        BigDecimal mainBalance = accountRepository.lockAvailableBalanceByAccountNumber(accountNumber)
+                .orElseThrow(() -> new AccountNotFoundException("Account not found: " + accountNumber));
+        List<AccountBalanceSlotRepository.SlotBalance> slots = slotRepository.lockSlotBalances(accountNumber);
+
+        BigDecimal total = mainBalance;
+        for (AccountBalanceSlotRepository.SlotBalance slot : slots) {
+            total = total.add(slot.getBalance());
+        }
+        if (total.compareTo(amount) < 0) {
+            throw new InsufficientFundsException("Insufficient funds");
+        }
+
+        BigDecimal remaining = amount;
+        BigDecimal fromMain = mainBalance.min(remaining);
+        if (fromMain.signum() > 0) {
+            if (accountRepository.debitIfSufficient(accountNumber, account.getUserId(), fromMain, now) == 0) {
+                throw new InvalidTransactionException("Account is not active: " + accountNumber);
+            }
+            remaining = remaining.subtract(fromMain);
+        }
+
+        for (AccountBalanceSlotRepository.SlotBalance slot : slots) {
+            if (remaining.signum() == 0) {
+                break;
+            }
+            BigDecimal take = slot.getBalance().min(remaining);
+            if (take.signum() > 0) {
+                slotRepository.debitSlotIfSufficient(accountNumber, slot.getSlotIndex(), take, now);
+                remaining = remaining.subtract(take);
+            }
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public BigDecimal getTotalBalance(String accountNumber) {
+        BigDecimal mainBalance = accountRepository.findBalanceByAccountNumber(accountNumber)
+                .orElseThrow(() -> new AccountNotFoundException("Account not found: " + accountNumber));
+        return mainBalance.add(slotRepository.sumBalanceByAccountNumber(accountNumber));
+    }
+
+    public void enableSlots(String accountNumber, int count) {
+        // 内存账本账户的余额以内存为准，不能再分散到槽位
+        if (isLedgerAccount(accountNumber)) {
+            throw new InvalidTransactionException("Ledger accounts cannot use balance slots");
+        }
+        Account account = accountRepository.findByAccountNumber(accountNumber)
+                .orElseThrow(() -> new AccountNotFoundException("Account not found: " + accountNumber));
+
+        Set<Integer> existing = slotRepository.findByAccountNumber(accountNumber).stream()
+                .map(AccountBalanceSlot::getSlotIndex)
+                .collect(Collectors.toSet());
+        for (int i = 0; i < count; i++) {
+            if (!existing.contains(i)) {
+                AccountBalanceSlot slot = new AccountBalanceSlot();
+                slot.setAccountNumber(accountNumber);
+                slot.setSlotIndex(i);
+                slot.setBalance(BigDecimal.ZERO);
+                slotRepository.save(slot);
+            }
+        }
+
+        // 只增不减：减少槽位前必须先合并，避免余额落在不再使用的槽位上
+        boolean grown = account.getBalanceSlots() == null || account.getBalanceSlots() < count;
+        if (grown) {
+            account.setBalanceSlots(count);
+            accountRepository.save(account);
+        }
+        slotCounts.put(accountNumber, account.getBalanceSlots());
+        logger.info("Account {} uses {} balance slots", accountNumber, account.getBalanceSlots());
+        if (!grown) {
+            return;
+        }
+
+        // 余额不变的广播事件：其他实例收到后重新加载该账户的槽位数，同时清掉其账户快照
+        BigDecimal total = account.getBalance().add(slotRepository.sumBalanceByAccountNumber(accountNumber));
+        eventPublisher.publishAccountBalanceEvent(new AccountBalanceEvent(
+                accountNumber, total, total, SLOTS_ENABLED_OPERATION, LocalDateTime.now()));
+    }
+
+    /**
+     * Reloads one account's slot count after another instance enabled its slots.
+     */
+    @Transactional(readOnly = true)
+    public void refreshSlots(String accountNumber) {
+        accountRepository.findByAccountNumber(accountNumber)
+                .filter(account -> account.getBalanceSlots() != null && account.getBalanceSlots() > 0)
+                .ifPresent(account -> slotCounts.merge(accountNumber, account.getBalanceSlots(), Math::max));
+    }
+
+    /**
+     * Folds all slot balances into the main balance. Takes the same locks in the same order
+     * as the debit sweep.
+     */
+    public void compact(String accountNumber) {
+        if (isLedgerAccount(accountNumber)) {
+            logger.warn("Skipping balance slot compaction for ledger account {}", accountNumber);
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        accountRepository.lockAvailableBalanceByAccountNumber(accountNumber)
+                .orElseThrow(() -> new AccountNotFoundException("Account not found: " + accountNumber));
+
+        BigDecimal slotTotal = BigDecimal.ZERO;
+        for (AccountBalanceSlotRepository.SlotBalance slot : slotRepository.lockSlotBalances(accountNumber)) {
+            slotTotal = slotTotal.add(slot.getBalance());
+        }
+        if (slotTotal.signum() == 0) {
+            return;
+        }
+
+        if (accountRepository.creditIfActive(accountNumber, slotTotal, now) == 0) {
+            logger.warn("Skipping balance slot compaction for inactive account {}", accountNumber);
+            return;
+        }
+        slotRepository.resetSlots(accountNumber, now);
+    }
+
+    private boolean isLedgerAccount(String accountNumber) {
+        return ledgerEngine != null && ledgerEngine.manages(accountNumber);
+    }
+
+    @Transactional(readOnly = true)
+    public Set<String> refreshSlottedAccounts() {
+        Map<String, Integer> current = accountRepository.findAllWithBalanceSlots().stream()
+                .collect(Collectors.toMap(Account::getAccountNumber, Account::getBalanceSlots));
+        slotCounts.putAll(current);
+        slotCounts.keySet().retainAll(current.keySet());
+        return current.keySet();
+    }
+}
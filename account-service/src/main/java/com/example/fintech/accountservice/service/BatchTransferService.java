@@ -0,0 +1,225 @@
+package com.example.fintech.accountservice.service;
+
+import com.example.fintech.accountservice.cache.AccountSnapshotCache;
+import com.example.fintech.accountservice.ledger.LedgerEngine;
+import com.example.fintech.accountservice.lock.AccountLockManager;
+import com.example.fintech.common.dto.BatchTransferResult;
+import com.example.fintech.common.dto.TransferRequest;
+import com.example.fintech.common.event.AccountBalanceEvent;
+import com.example.fintech.common.exception.InvalidTransactionException;
+import com.example.fintech.common.service.EventPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Applies many transfers in one transaction.
+ *
+ * All involved rows are locked once in account-number order, the transfers are replayed in
+ * memory in request order, and the net change per account is written with one JDBC batch.
+ * Items that fail validation or would overdraw are reported and skipped; the rest commit together.
+ */
+@Service
+public class BatchTransferService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchTransferService.class);
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccountLockManager accountLockManager;
+
+    @Autowired
+    private BalanceSlotService balanceSlotService;
+
+    @Autowired
+    private AccountSnapshotCache accountSnapshotCache;
+
+    @Autowired
+    private EventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
+    @Value("${account.transfer.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    private static class LockedAccount {
+        final Long userId;
+        final String status;
+        final BigDecimal originalBalance;
+        final BigDecimal heldBalance;
+        BigDecimal balance;
+
+        LockedAccount(Long userId, String status, BigDecimal balance, BigDecimal heldBalance) {
+            this.userId = userId;
+            this.status = status;
+            this.originalBalance = balance;
+            this.heldBalance = heldBalance;
+            this.balance = balance;
+        }
+    }
+
+    @Transactional
+    public List<BatchTransferResult> transferBatch(List<TransferRequest> transfers, Long userId) {
+        if (transfers == null || transfers.isEmpty()) {
+            throw new InvalidTransactionException("Batch contains no transfers");
+        }
+        if (transfers.size() > maxBatchSize) {
+            throw new InvalidTransactionException("Batch size exceeds limit of " + maxBatchSize);
+        }
+
+        BatchTransferResult[] results = new BatchTransferResult[transfers.size()];
+        TreeSet<String> accountNumbers = new TreeSet<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            String error = validateShape(transfer);
+            if (error != null) {
+                results[i] = result(i, transfer, false, error);
+            } else {
+                accountNumbers.add(transfer.getFromAccount());
+                accountNumbers.add(transfer.getToAccount());
+            }
+        }
+
+        Map<String, LockedAccount> accounts = accountNumbers.isEmpty()
+                ? Map.of() : lockAccounts(accountNumbers);
+
+        List<AccountBalanceEvent> events = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < transfers.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            TransferRequest transfer = transfers.get(i);
+            LockedAccount from = accounts.get(transfer.getFromAccount());
+            LockedAccount to = accounts.get(transfer.getToAccount());
+
+            String error = validateAgainst(from, to, transfer, userId);
+            if (error != null) {
+                results[i] = result(i, transfer, false, error);
+                continue;
+            }
+
+            BigDecimal amount = transfer.getAmount();
+            BigDecimal fromOld = from.balance;
+            BigDecimal toOld = to.balance;
+            from.balance = fromOld.subtract(amount);
+            to.balance = toOld.add(amount);
+            events.add(new AccountBalanceEvent(transfer.getFromAccount(), fromOld, from.balance, "TRANSFER_OUT", now));
+            events.add(new AccountBalanceEvent(transfer.getToAccount(), toOld, to.balance, "TRANSFER_IN", now));
+            results[i] = result(i, transfer, true, "Transfer successful");
+        }
+
+        writeBalances(accounts, now);
+        eventPublisher.publishAccountBalanceEvents(events);
+
+        logger.info("Batch transfer applied {} of {} transfers", events.size() / 2, transfers.size());
+        return List.of(results);
+    }
+
+    private String validateShape(TransferRequest transfer) {
+        if (transfer == null || transfer.getFromAccount() == null || transfer.getToAccount() == null) {
+            return "From and to accounts are required";
+        }
+        if (transfer.getAmount() == null || transfer.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            return "Amount must be positive";
+        }
+        if (transfer.getFromAccount().equals(transfer.getToAccount())) {
+            return "Cannot transfer to same account";
+        }
+        // 热点账户的余额不完全在accounts行上，批量路径无法一次性锁住，改走单笔接口
+        if (isHotAccount(transfer.getFromAccount()) || isHotAccount(transfer.getToAccount())) {
+            return "Hot accounts are not supported in batch transfers";
+        }
+        return null;
+    }
+
+    private String validateAgainst(LockedAccount from, LockedAccount to, TransferRequest transfer, Long userId) {
+        if (from == null) {
+            return "Account not found: " + transfer.getFromAccount();
+        }
+        if (to == null) {
+            return "Account not found: " + transfer.getToAccount();
+        }
+        if (!from.userId.equals(userId)) {
+            return "Access denied: You don't own this account";
+        }
+        if (!"ACTIVE".equals(from.status)) {
+            return "Account is not active for transfer";
+        }
+        if (!"ACTIVE".equals(to.status)) {
+            return "Account is not active for receive";
+        }
+        if (from.balance.subtract(from.heldBalance).compareTo(transfer.getAmount()) < 0) {
+            return "Insufficient funds for transfer";
+        }
+        return null;
+    }
+
+    private boolean isHotAccount(String accountNumber) {
+        return (ledgerEngine != null && ledgerEngine.manages(accountNumber))
+                || balanceSlotService.isSlotted(accountNumber);
+    }
+
+    // 先取进程内分段锁（与实体路径互斥），再按账号顺序对数据库行加锁（与条件UPDATE路径互斥）
+    private Map<String, LockedAccount> lockAccounts(TreeSet<String> accountNumbers) {
+        accountLockManager.lockForTransaction(accountNumbers.toArray(new String[0]));
+
+        Map<String, LockedAccount> accounts = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT account_number, user_id, status, balance, held_balance FROM accounts " +
+                        "WHERE account_number IN (:accountNumbers) ORDER BY account_number FOR UPDATE",
+                new MapSqlParameterSource("accountNumbers", accountNumbers),
+                rs -> {
+                    accounts.put(rs.getString("account_number"), new LockedAccount(rs.getLong("user_id"),
+                            rs.getString("status"), rs.getBigDecimal("balance"), rs.getBigDecimal("held_balance")));
+                });
+        return accounts;
+    }
+
+    private void writeBalances(Map<String, LockedAccount> accounts, LocalDateTime now) {
+        List<MapSqlParameterSource> updates = new ArrayList<>();
+        Timestamp updatedAt = Timestamp.valueOf(now);
+        accounts.forEach((accountNumber, account) -> {
+            BigDecimal delta = account.balance.subtract(account.originalBalance);
+            if (delta.signum() != 0) {
+                updates.add(new MapSqlParameterSource()
+                        .addValue("delta", delta)
+                        .addValue("updatedAt", updatedAt)
+                        .addValue("accountNumber", accountNumber));
+                accountSnapshotCache.evictAfterCommit(accountNumber);
+            }
+        });
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(
+                "UPDATE accounts SET balance = balance + :delta, updated_at = :updatedAt " +
+                        "WHERE account_number = :accountNumber",
+                updates.toArray(new MapSqlParameterSource[0]));
+    }
+
+    private BatchTransferResult result(int index, TransferRequest transfer, boolean success, String message) {
+        return transfer == null
+                ? new BatchTransferResult(index, null, null, null, false, message)
+                : new BatchTransferResult(index, transfer.getFromAccount(), transfer.getToAccount(),
+                transfer.getAmount(), success, message);
+    }
+}
@@ -1,16 +1,13 @@
 package com.example.fintech.accountservice.service;
 
 import com.example.fintech.common.saga.SagaOrchestrator;
-import com.example.fintech.common.saga.SagaStep;
 import com.example.fintech.accountservice.saga.TransferSagaSteps;
-import com.example.fintech.accountservice.repository.AccountRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class DistributedTransferService {
@@ -19,19 +16,12 @@ public class DistributedTransferService {
     private SagaOrchestrator sagaOrchestrator;
 
     @Autowired
-    private AccountRepository accountRepository;
+    private TransferSagaSteps transferSagaSteps;
 
-    @Transactional
-    public void executeDistributedTransfer(String fromAccount, String toAccount, BigDecimal amount) {
-
-        SagaStep reserveStep = new TransferSagaSteps.ReserveFromAccountStep(
-                accountRepository, fromAccount, amount);
-
-        SagaStep creditStep = new TransferSagaSteps.CreditToAccountStep(
-                accountRepository, toAccount, amount);
-
-        List<SagaStep> steps = Arrays.asList(reserveStep, creditStep);
-
-        sagaOrchestrator.executeSaga(steps);
+    // 不占用请求线程：每个步骤在自己的本地事务中异步执行，返回的Future在Saga结束（含补偿）后完成
+    public CompletableFuture<Void> executeDistributedTransfer(String fromAccount, String toAccount, BigDecimal amount) {
+        Map<String, String> payload = TransferSagaSteps.payload(fromAccount, toAccount, amount);
+        return sagaOrchestrator.executeSaga(
+                TransferSagaSteps.SAGA_TYPE, payload, transferSagaSteps.createSteps(payload));
     }
 }
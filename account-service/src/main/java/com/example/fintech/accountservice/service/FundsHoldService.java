@@ -0,0 +1,228 @@
+package com.example.fintech.accountservice.service;
+
+import com.example.fintech.accountservice.cache.AccountSnapshotCache;
+import com.example.fintech.accountservice.ledger.LedgerEngine;
+import com.example.fintech.accountservice.lock.AccountLockManager;
+import com.example.fintech.accountservice.repository.AccountRepository;
+import com.example.fintech.accountservice.repository.FundsHoldRepository;
+import com.example.fintech.common.entity.Account;
+import com.example.fintech.common.entity.FundsHold;
+import com.example.fintech.common.enums.HoldStatus;
+import com.example.fintech.common.exception.AccountNotFoundException;
+import com.example.fintech.common.exception.InsufficientFundsException;
+import com.example.fintech.common.exception.InvalidTransactionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Funds holds: available balance = balance - held_balance, where held_balance is the sum of
+ * ACTIVE rows in funds_holds. Placing a hold touches only held_balance; capture turns it into
+ * a debit and release drops it, each in a single UPDATE.
+ */
+@Service
+@Transactional
+public class FundsHoldService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FundsHoldService.class);
+
+    @Autowired
+    private FundsHoldRepository fundsHoldRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountLockManager accountLockManager;
+
+    @Autowired
+    private AccountSnapshotCache accountSnapshotCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private LedgerEngine ledgerEngine;
+
+    @Value("${account.holds.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    @Value("${account.holds.expiry-batch-size:500}")
+    private int expiryBatchSize;
+
+    private TransactionTemplate expiryTemplate;
+
+    @PostConstruct
+    public void init() {
+        expiryTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Places a hold that expires after the configured TTL. The TTL is a backstop for holds whose
+     * owner disappeared, so it must exceed the time the owner needs to resolve them. Placing the
+     * same holdId again is a no-op, so retries are safe.
+     */
+    public void placeHold(String holdId, String accountNumber, BigDecimal amount) {
+        placeHold(holdId, accountNumber, amount, LocalDateTime.now().plusSeconds(ttlSeconds));
+    }
+
+    /**
+     * Places a hold that never expires. For holds owned by a protocol that always resolves them,
+     * such as a prepared two-phase commit waiting for the coordinator's decision.
+     */
+    public void placeHoldUntilResolved(String holdId, String accountNumber, BigDecimal amount) {
+        placeHold(holdId, accountNumber, amount, null);
+    }
+
+    private void placeHold(String holdId, String accountNumber, BigDecimal amount, LocalDateTime expiresAt) {
+        Optional<FundsHold> existing = fundsHoldRepository.findByHoldId(holdId);
+        if (existing.isPresent()) {
+            HoldStatus status = existing.get().getStatus();
+            // 已释放（含释放先于冻结到达时留下的占位行）或已过期的冻结不能再次生效
+            if (status == HoldStatus.RELEASED || status == HoldStatus.EXPIRED) {
+                throw new InvalidTransactionException("Hold " + holdId + " was already " + status);
+            }
+            return;
+        }
+        rejectLedgerAccount(accountNumber);
+        // 与实体读-改-写路径互斥，保证其读到的冻结金额是最新的
+        accountLockManager.lockForTransaction(accountNumber);
+
+        LocalDateTime now = LocalDateTime.now();
+        if (accountRepository.holdIfAvailable(accountNumber, amount, now) == 0) {
+            Account account = accountRepository.findByAccountNumber(accountNumber)
+                    .orElseThrow(() -> new AccountNotFoundException("Account not found: " + accountNumber));
+            if (!"ACTIVE".equals(account.getStatus())) {
+                throw new InvalidTransactionException("Account is not active for transfer");
+            }
+            throw new InsufficientFundsException("Insufficient funds for transfer");
+        }
+
+        FundsHold hold = new FundsHold();
+        hold.setHoldId(holdId);
+        hold.setAccountNumber(accountNumber);
+        hold.setAmount(amount);
+        hold.setStatus(HoldStatus.ACTIVE);
+        hold.setExpiresAt(expiresAt);
+        fundsHoldRepository.save(hold);
+
+        accountSnapshotCache.evictAfterCommit(accountNumber);
+    }
+
+    /**
+     * Captures the hold. Returns false if it was already captured, so callers can tell a
+     * redelivery from the first capture.
+     */
+    public boolean capture(String holdId) {
+        rejectLedgerHold(holdId);
+        if (fundsHoldRepository.capture(holdId, LocalDateTime.now()) == 0) {
+            HoldStatus status = fundsHoldRepository.findByHoldId(holdId).map(FundsHold::getStatus).orElse(null);
+            if (status == HoldStatus.CAPTURED) {
+                return false;
+            }
+            throw new InvalidTransactionException("Hold " + holdId + " cannot be captured (" + status + ")");
+        }
+        evictHoldAccount(holdId);
+        return true;
+    }
+
+    /**
+     * Releases the hold if it is still active. If the hold was never placed, records a RELEASED
+     * tombstone under its id so that a placement arriving after the release is refused instead of
+     * freezing the funds with nobody left to release them.
+     */
+    public void release(String holdId, String accountNumber, BigDecimal amount) {
+        if (fundsHoldRepository.release(holdId, LocalDateTime.now()) > 0) {
+            evictHoldAccount(holdId);
+            return;
+        }
+        if (fundsHoldRepository.findByHoldId(holdId).isPresent()) {
+            return;
+        }
+        // 与迟到的冻结并发时由 hold_id 唯一约束裁决：插入失败则本次释放回滚重试，届时会释放那笔冻结
+        FundsHold tombstone = new FundsHold();
+        tombstone.setHoldId(holdId);
+        tombstone.setAccountNumber(accountNumber);
+        tombstone.setAmount(amount);
+        tombstone.setStatus(HoldStatus.RELEASED);
+        fundsHoldRepository.saveAndFlush(tombstone);
+    }
+
+    /**
+     * Undoes a capture (refund) or releases a still-active hold. Idempotent: the hold ends up
+     * RELEASED either way and the refund is applied at most once.
+     */
+    public void reverse(String holdId) {
+        rejectLedgerHold(holdId);
+        LocalDateTime now = LocalDateTime.now();
+        if (fundsHoldRepository.refundCaptured(holdId, now) > 0 || fundsHoldRepository.release(holdId, now) > 0) {
+            evictHoldAccount(holdId);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<FundsHold> findHold(String holdId) {
+        return fundsHoldRepository.findByHoldId(holdId);
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Scheduled(fixedDelayString = "${account.holds.expiry-interval-ms:30000}")
+    public void expireHolds() {
+        int total = 0;
+        int expired;
+        do {
+            expired = expiryTemplate.execute(status -> expireBatch(LocalDateTime.now()));
+            total += expired;
+        } while (expired == expiryBatchSize);
+
+        if (total > 0) {
+            logger.info("Expired {} funds holds", total);
+        }
+    }
+
+    private int expireBatch(LocalDateTime now) {
+        // 内存账本账户上的冻结不参与过期，由人工处理
+        Set<String> ledgerAccounts = ledgerEngine == null ? Set.of() : ledgerEngine.getManagedAccounts();
+        List<Long> ids = ledgerAccounts.isEmpty()
+                ? fundsHoldRepository.lockExpiredIds(now, expiryBatchSize)
+                : fundsHoldRepository.lockExpiredIdsExcluding(now, ledgerAccounts, expiryBatchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        fundsHoldRepository.releaseHeldAmounts(ids, now);
+        fundsHoldRepository.markExpired(ids, now);
+        return ids.size();
+    }
+
+    // 内存账本账户的余额以内存为准，扣款和退款不能绕过账本直接改写账户行
+    private void rejectLedgerAccount(String accountNumber) {
+        if (ledgerEngine != null && ledgerEngine.manages(accountNumber)) {
+            throw new InvalidTransactionException("Ledger accounts cannot use funds holds");
+        }
+    }
+
+    private void rejectLedgerHold(String holdId) {
+        if (ledgerEngine != null) {
+            fundsHoldRepository.findByHoldId(holdId).ifPresent(hold -> rejectLedgerAccount(hold.getAccountNumber()));
+        }
+    }
+
+    private void evictHoldAccount(String holdId) {
+        fundsHoldRepository.findByHoldId(holdId)
+                .ifPresent(hold -> accountSnapshotCache.evictAfterCommit(hold.getAccountNumber()));
+    }
+}
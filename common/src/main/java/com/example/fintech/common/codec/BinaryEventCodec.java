@@ -0,0 +1,352 @@
+package com.example.fintech.common.codec;
+
+import com.example.fintech.common.enums.TransactionStatus;
+import com.example.fintech.common.enums.TransactionType;
+import com.example.fintech.common.event.AccountBalanceEvent;
+import com.example.fintech.common.event.NotificationEvent;
+import com.example.fintech.common.event.PrepareVoteEvent;
+import com.example.fintech.common.event.TransactionEvent;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of the domain events.
+ *
+ * Layout: type tag, schema version, then the fields in declaration order. Amounts are an unscaled
+ * long plus scale, timestamps UTC epoch micros, and enum-valued strings their ordinal.
+ *
+ * Compatibility rules: new fields are only appended and bump the type's schema version; enum
+ * constants are only appended. A decoder reads the fields it knows and ignores the rest, so old
+ * and new versions can exchange messages during a rollout.
+ */
+public final class BinaryEventCodec {
+
+    public static final byte TRANSACTION_EVENT = 1;
+    public static final byte ACCOUNT_BALANCE_EVENT = 2;
+    public static final byte NOTIFICATION_EVENT = 3;
+    public static final byte PREPARE_VOTE_EVENT = 4;
+
+    // 各事件当前的 schema 版本，追加字段时递增
+    public static final int TRANSACTION_EVENT_VERSION = 1;
+    public static final int ACCOUNT_BALANCE_EVENT_VERSION = 1;
+    public static final int NOTIFICATION_EVENT_VERSION = 1;
+    public static final int PREPARE_VOTE_EVENT_VERSION = 1;
+
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final int NOT_AN_ENUM = 0xFF;
+
+    private BinaryEventCodec() {
+    }
+
+    public static boolean supports(Class<?> type) {
+        return type == TransactionEvent.class || type == AccountBalanceEvent.class
+                || type == NotificationEvent.class || type == PrepareVoteEvent.class;
+    }
+
+    public static int schemaVersion(Object event) {
+        if (event instanceof TransactionEvent) {
+            return TRANSACTION_EVENT_VERSION;
+        } else if (event instanceof AccountBalanceEvent) {
+            return ACCOUNT_BALANCE_EVENT_VERSION;
+        } else if (event instanceof NotificationEvent) {
+            return NOTIFICATION_EVENT_VERSION;
+        } else if (event instanceof PrepareVoteEvent) {
+            return PREPARE_VOTE_EVENT_VERSION;
+        }
+        throw new IllegalArgumentException("No binary encoding for " + event.getClass().getName());
+    }
+
+    public static byte[] encode(Object event) {
+        Writer out = new Writer();
+        if (event instanceof TransactionEvent e) {
+            out.header(TRANSACTION_EVENT, TRANSACTION_EVENT_VERSION);
+            out.string(e.getTransactionId());
+            out.string(e.getFromAccount());
+            out.string(e.getToAccount());
+            out.decimal(e.getAmount());
+            out.enumString(e.getTransactionType(), TYPES);
+            out.enumString(e.getStatus(), STATUSES);
+            out.timestamp(e.getTimestamp());
+            out.string(e.getDescription());
+            out.decimal(e.getFromBalanceBefore());
+            out.decimal(e.getToBalanceBefore());
+        } else if (event instanceof AccountBalanceEvent e) {
+            out.header(ACCOUNT_BALANCE_EVENT, ACCOUNT_BALANCE_EVENT_VERSION);
+            out.string(e.getAccountNumber());
+            out.decimal(e.getOldBalance());
+            out.decimal(e.getNewBalance());
+            out.string(e.getOperation());
+            out.timestamp(e.getTimestamp());
+        } else if (event instanceof NotificationEvent e) {
+            out.header(NOTIFICATION_EVENT, NOTIFICATION_EVENT_VERSION);
+            out.string(e.getUserId());
+            out.string(e.getTitle());
+            out.string(e.getMessage());
+            out.string(e.getType());
+            out.timestamp(e.getTimestamp());
+        } else if (event instanceof PrepareVoteEvent e) {
+            out.header(PREPARE_VOTE_EVENT, PREPARE_VOTE_EVENT_VERSION);
+            out.string(e.getTransactionId());
+            out.string(e.getParticipant());
+            out.bool(e.isPrepared());
+            out.string(e.getReason());
+            out.timestamp(e.getTimestamp());
+        } else {
+            throw new IllegalArgumentException("No binary encoding for " + event.getClass().getName());
+        }
+        return out.toByteArray();
+    }
+
+    public static Object decode(byte[] body) {
+        Reader in = new Reader(body);
+        byte type = in.readByte();
+        int version = (int) in.varint();
+        if (version < 1) {
+            throw new IllegalArgumentException("Invalid schema version " + version + " for event type " + type);
+        }
+        // 目前所有事件都只有 v1 字段；更高版本追加的字段直接忽略
+        switch (type) {
+            case TRANSACTION_EVENT -> {
+                TransactionEvent e = new TransactionEvent();
+                e.setTransactionId(in.string());
+                e.setFromAccount(in.string());
+                e.setToAccount(in.string());
+                e.setAmount(in.decimal());
+                e.setTransactionType(in.enumString(TYPES));
+                e.setStatus(in.enumString(STATUSES));
+                e.setTimestamp(in.timestamp());
+                e.setDescription(in.string());
+                e.setFromBalanceBefore(in.decimal());
+                e.setToBalanceBefore(in.decimal());
+                return e;
+            }
+            case ACCOUNT_BALANCE_EVENT -> {
+                AccountBalanceEvent e = new AccountBalanceEvent();
+                e.setAccountNumber(in.string());
+                e.setOldBalance(in.decimal());
+                e.setNewBalance(in.decimal());
+                e.setOperation(in.string());
+                e.setTimestamp(in.timestamp());
+                return e;
+            }
+            case NOTIFICATION_EVENT -> {
+                NotificationEvent e = new NotificationEvent();
+                e.setUserId(in.string());
+                e.setTitle(in.string());
+                e.setMessage(in.string());
+                e.setType(in.string());
+                e.setTimestamp(in.timestamp());
+                return e;
+            }
+            case PREPARE_VOTE_EVENT -> {
+                PrepareVoteEvent e = new PrepareVoteEvent();
+                e.setTransactionId(in.string());
+                e.setParticipant(in.string());
+                e.setPrepared(in.bool());
+                e.setReason(in.string());
+                e.setTimestamp(in.timestamp());
+                return e;
+            }
+            default -> throw new IllegalArgumentException("Unknown binary event type " + type);
+        }
+    }
+
+    private static final class Writer {
+        private byte[] buf = new byte[128];
+        private int pos;
+
+        void header(byte type, int version) {
+            writeByte(type);
+            varint(version);
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        void bool(boolean value) {
+            writeByte(value ? 1 : 0);
+        }
+
+        // 长度 + 1，0 表示 null
+        void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        // 0 = null，1 = long 尾数，2 = 超出 long 的尾数按字节写出
+        void decimal(BigDecimal value) {
+            if (value == null) {
+                writeByte(0);
+                return;
+            }
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() < 64) {
+                writeByte(1);
+                zigzag(unscaled.longValue());
+            } else {
+                writeByte(2);
+                byte[] bytes = unscaled.toByteArray();
+                varint(bytes.length);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buf, pos, bytes.length);
+                pos += bytes.length;
+            }
+            zigzag(value.scale());
+        }
+
+        // 0 表示 null
+        void timestamp(LocalDateTime value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            long micros = value.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + value.getNano() / 1_000;
+            varint(1);
+            zigzag(micros);
+        }
+
+        // 枚举值写序号，其余字符串（如两阶段提交的状态）原样写出
+        <E extends Enum<E>> void enumString(String value, E[] constants) {
+            if (value != null) {
+                for (E constant : constants) {
+                    if (constant.name().equals(value)) {
+                        writeByte(constant.ordinal());
+                        return;
+                    }
+                }
+            }
+            writeByte(NOT_AN_ENUM);
+            string(value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            if (pos >= buf.length) {
+                throw new IllegalArgumentException("Truncated binary event");
+            }
+            return buf[pos++];
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in binary event");
+        }
+
+        long zigzag() {
+            long raw = varint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        boolean bool() {
+            return readByte() != 0;
+        }
+
+        String string() {
+            int length = (int) varint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            checkRemaining(length);
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        BigDecimal decimal() {
+            int kind = readByte();
+            if (kind == 0) {
+                return null;
+            }
+            BigInteger unscaled = kind == 1
+                    ? BigInteger.valueOf(zigzag())
+                    : new BigInteger(bytes((int) varint()));
+            return new BigDecimal(unscaled, (int) zigzag());
+        }
+
+        LocalDateTime timestamp() {
+            if (varint() == 0) {
+                return null;
+            }
+            long micros = zigzag();
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                    (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+        }
+
+        <E extends Enum<E>> String enumString(E[] constants) {
+            int ordinal = readByte() & 0xFF;
+            if (ordinal == NOT_AN_ENUM) {
+                return string();
+            }
+            if (ordinal >= constants.length) {
+                throw new IllegalArgumentException("Unknown enum ordinal " + ordinal);
+            }
+            return constants[ordinal].name();
+        }
+
+        private byte[] bytes(int length) {
+            checkRemaining(length);
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        private void checkRemaining(int length) {
+            if (length < 0 || pos + length > buf.length) {
+                throw new IllegalArgumentException("Truncated binary event");
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.fintech.common.codec;
+
+import com.example.fintech.common.dedupe.MessageKeys;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * Picks the wire format per message.
+ *
+ * Inbound messages are decoded by content type, so a consumer reads binary and JSON events side
+ * by side. Outbound events use the binary codec only when binary output is enabled; everything
+ * else, and every payload the codec does not know, goes through Jackson. Roll out by deploying
+ * consumers first and switching producers to binary afterwards.
+ */
+public class NegotiatingMessageConverter implements MessageConverter {
+
+    public static final String BINARY_CONTENT_TYPE = "application/x-fintech-event";
+    public static final String EVENT_TYPE_HEADER = "x-event-type";
+    public static final String SCHEMA_VERSION_HEADER = "x-schema-version";
+
+    private final Jackson2JsonMessageConverter json;
+    private final boolean binaryOutbound;
+
+    public NegotiatingMessageConverter(Jackson2JsonMessageConverter json, boolean binaryOutbound) {
+        this.json = json;
+        this.binaryOutbound = binaryOutbound;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        // 两种格式都带上事件键，消费端据此去重
+        String eventKey = MessageKeys.eventKey(object);
+        if (eventKey != null) {
+            messageProperties.setHeader(MessageKeys.EVENT_KEY_HEADER, eventKey);
+        }
+        if (!binaryOutbound || !BinaryEventCodec.supports(object.getClass())) {
+            return json.toMessage(object, messageProperties);
+        }
+        byte[] body;
+        try {
+            body = BinaryEventCodec.encode(object);
+        } catch (RuntimeException e) {
+            throw new MessageConversionException("Failed to encode " + object.getClass().getSimpleName(), e);
+        }
+        messageProperties.setContentType(BINARY_CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        messageProperties.setHeader(EVENT_TYPE_HEADER, object.getClass().getSimpleName());
+        messageProperties.setHeader(SCHEMA_VERSION_HEADER, BinaryEventCodec.schemaVersion(object));
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        String contentType = message.getMessageProperties().getContentType();
+        if (contentType == null || !contentType.startsWith(BINARY_CONTENT_TYPE)) {
+            return json.fromMessage(message);
+        }
+        try {
+            return BinaryEventCodec.decode(message.getBody());
+        } catch (RuntimeException e) {
+            throw new MessageConversionException("Failed to decode binary event "
+                    + message.getMessageProperties().getHeader(EVENT_TYPE_HEADER), e);
+        }
+    }
+}
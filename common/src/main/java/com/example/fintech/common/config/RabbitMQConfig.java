@@ -1,5 +1,7 @@
 package com.example.fintech.common.config;
 
+import com.example.fintech.common.codec.NegotiatingMessageConverter;
+import com.example.fintech.common.dedupe.DedupeInterceptor;
 import com.rabbitmq.client.AMQP;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
@@ -7,12 +9,19 @@ import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class RabbitMQConfig {
 
+    // json: 仍按 JSON 发送；binary: 事件改用紧凑二进制编码。接收端总是按 content-type 同时支持两种格式
+    @Value("${event.codec.outbound:json}")
+    private String outboundCodec;
+
     // Exchange names
     public static final String TRANSACTION_EXCHANGE = "transaction.exchange";
     public static final String ACCOUNT_EXCHANGE = "account.exchange";
@@ -22,17 +31,24 @@ public class RabbitMQConfig {
     public static final String TRANSACTION_DLQ = "transaction.dlq";
     public static final String ACCOUNT_BALANCE_DLQ = "account.balance.dlq";
     public static final String NOTIFICATION_DLQ = "notification.dlq";
+    public static final String DTX_DECISION_DLQ = "dtx.decision.dlq";
 
     // Queue names
     public static final String TRANSACTION_QUEUE = "transaction.queue";
     public static final String ACCOUNT_BALANCE_QUEUE = "account.balance.queue";
     public static final String NOTIFICATION_QUEUE = "notification.queue";
     public static final String AUDIT_QUEUE = "audit.queue";
+    public static final String TRANSACTION_AGGREGATE_QUEUE = "transaction.aggregate.queue";
+    // 两阶段提交：参与者消费 prepare / decision，投票直接回复到协调者实例的 replyTo 队列
+    public static final String DTX_PREPARE_QUEUE = "dtx.prepare.queue";
+    public static final String DTX_DECISION_QUEUE = "dtx.decision.queue";
 
     // Routing keys
     public static final String TRANSACTION_ROUTING_KEY = "transaction.created";
     public static final String BALANCE_ROUTING_KEY = "account.balance.updated";
     public static final String NOTIFICATION_ROUTING_KEY = "notification.send";
+    public static final String DTX_PREPARE_ROUTING_KEY = "dtx.prepare";
+    public static final String DTX_DECISION_ROUTING_KEY = "dtx.decision";
 
     @Bean
     public RabbitAdmin rabbitAdmin(ConnectionFactory connectionFactory) {
@@ -86,7 +102,25 @@ public class RabbitMQConfig {
                 .build();
     }
 
-    
+    @Bean
+    public Queue dtxPrepareQueue() {
+        return QueueBuilder.durable(DTX_PREPARE_QUEUE).build();
+    }
+
+    @Bean
+    public Queue dtxDecisionQueue() {
+        // 决议消息不设 TTL：协调者的决议必须送达，只有无法执行的决议才转入死信队列
+        return QueueBuilder.durable(DTX_DECISION_QUEUE)
+                .withArgument("x-dead-letter-exchange", TRANSACTION_EXCHANGE)
+                .withArgument("x-dead-letter-routing-key", "dtx.decision.failed")
+                .build();
+    }
+
+    @Bean
+    public Queue transactionAggregateQueue() {
+        return QueueBuilder.durable(TRANSACTION_AGGREGATE_QUEUE).build();
+    }
+
     @Bean
     public Queue auditQueue() {
         return QueueBuilder.durable(AUDIT_QUEUE).build();
@@ -105,6 +139,11 @@ public class RabbitMQConfig {
         return QueueBuilder.durable(ACCOUNT_BALANCE_DLQ).build();
     }
 
+    @Bean
+    public Queue dtxDecisionDeadLetterQueue() {
+        return QueueBuilder.durable(DTX_DECISION_DLQ).build();
+    }
+
     @Bean
     public Queue notificationDeadLetterQueue() {
         System.out.println("=== Creating Notification DLQ Bean ===");
@@ -136,6 +175,30 @@ public class RabbitMQConfig {
                 .with(NOTIFICATION_ROUTING_KEY);
     }
 
+    @Bean
+    public Binding dtxPrepareBinding() {
+        return BindingBuilder
+                .bind(dtxPrepareQueue())
+                .to(transactionExchange())
+                .with(DTX_PREPARE_ROUTING_KEY);
+    }
+
+    @Bean
+    public Binding dtxDecisionBinding() {
+        return BindingBuilder
+                .bind(dtxDecisionQueue())
+                .to(transactionExchange())
+                .with(DTX_DECISION_ROUTING_KEY);
+    }
+
+    @Bean
+    public Binding transactionAggregateBinding() {
+        return BindingBuilder
+                .bind(transactionAggregateQueue())
+                .to(transactionExchange())
+                .with(TRANSACTION_ROUTING_KEY);
+    }
+
     @Bean
     public Binding auditBinding() {
         return BindingBuilder
@@ -183,26 +246,39 @@ public class RabbitMQConfig {
                 .with("notification.failed");
     }
 
-    // JSON converter
     @Bean
-    public Jackson2JsonMessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+    public Binding dtxDecisionDlqBinding() {
+        return BindingBuilder
+                .bind(dtxDecisionDeadLetterQueue())
+                .to(transactionExchange())
+                .with("dtx.decision.failed");
+    }
+
+    // 按 content-type 在二进制编码和 JSON 之间选择
+    @Bean
+    public MessageConverter messageConverter() {
+        return new NegotiatingMessageConverter(new Jackson2JsonMessageConverter(), "binary".equalsIgnoreCase(outboundCodec));
     }
 
-    // RabbitTemplate with JSON converter
+    // RabbitTemplate with event converter
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
         template.setMessageConverter(messageConverter());
+        // 自定义模板不会套用 spring.rabbitmq.template.mandatory，无法路由的消息需要退回给ReturnsCallback
+        template.setMandatory(true);
         return template;
     }
 
     // Listener container factory
     @Bean
-    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory connectionFactory) {
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                               ObjectProvider<DedupeInterceptor> dedupeInterceptor) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
         factory.setMessageConverter(messageConverter());
+        // 启用去重时，dedupe.queues 中的队列跳过已处理过的消息
+        dedupeInterceptor.ifAvailable(factory::setAdviceChain);
         return factory;
     }
-}
\ No newline at end of file
+}
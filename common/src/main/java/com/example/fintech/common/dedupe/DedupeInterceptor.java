@@ -0,0 +1,48 @@
+package com.example.fintech.common.dedupe;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener container advice that skips messages already processed from the same queue.
+ *
+ * Wraps the container's invokeListener(Channel, Object) for single-message listeners on queues
+ * listed in dedupe.queues. A skipped duplicate returns normally, so it must only be used with
+ * AUTO-ack containers; batch listeners call {@link MessageDeduplicator} directly.
+ */
+@Component
+@ConditionalOnProperty(name = "dedupe.enabled", havingValue = "true")
+public class DedupeInterceptor implements MethodInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DedupeInterceptor.class);
+
+    @Autowired
+    private MessageDeduplicator deduplicator;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] args = invocation.getArguments();
+        if (args.length < 2 || !(args[1] instanceof Message message)) {
+            return invocation.proceed();
+        }
+        String queue = message.getMessageProperties().getConsumerQueue();
+        String key = MessageKeys.of(message);
+        if (key == null || !deduplicator.applies(queue)) {
+            return invocation.proceed();
+        }
+
+        if (deduplicator.isDuplicate(queue, key)) {
+            logger.info("Skipping duplicate message {} on {}", key, queue);
+            return null;
+        }
+        Object result = invocation.proceed();
+        deduplicator.markProcessed(queue, key);
+        return result;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.fintech.common.dedupe;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Decides whether a consumer has already processed a message.
+ *
+ * processed_messages is the source of truth shared by all instances. A bounded LRU of keys this
+ * instance processed answers "seen" without touching it; every other key is looked up, with one
+ * query per batch for batch listeners. There is no in-memory "never seen" answer: the queues are
+ * consumed by several instances, so nothing local can prove another instance has not processed
+ * a key.
+ *
+ * Keys are recorded after successful processing, so a crash in between re-processes, and copies
+ * handled by two instances at the same moment can both be processed.
+ */
+@Component
+@ConditionalOnProperty(name = "dedupe.enabled", havingValue = "true")
+public class MessageDeduplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageDeduplicator.class);
+    private static final int MAX_KEY_LENGTH = 128;
+
+    @Autowired
+    private ProcessedMessageStore store;
+
+    @Value("${dedupe.queues:}")
+    private String dedupeQueues;
+
+    @Value("${dedupe.lru-size:100000}")
+    private int lruSize;
+
+    @Value("${dedupe.retention-hours:168}")
+    private long retentionHours;
+
+    private Set<String> queues;
+    private Map<String, Boolean> recent;
+
+    private final LongAdder lruHits = new LongAdder();
+    private final LongAdder storeLookups = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        queues = parseQueues(dedupeQueues);
+        recent = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > lruSize;
+            }
+        });
+    }
+
+    public boolean applies(String queue) {
+        return queue != null && queues.contains(queue);
+    }
+
+    public boolean isDuplicate(String queue, String key) {
+        key = normalize(key);
+        if (seenRecently(queue, key)) {
+            return true;
+        }
+        storeLookups.increment();
+        boolean seen = store.exists(queue, key);
+        if (seen) {
+            recent.put(queue + '|' + key, Boolean.TRUE);
+            duplicates.increment();
+        }
+        return seen;
+    }
+
+    /**
+     * Returns the keys (as given by {@link MessageKeys#of}) of the messages that were already
+     * processed from the queue. Keys the LRU cannot settle are looked up together.
+     */
+    public Set<String> findProcessed(String queue, List<Message> messages) {
+        Set<String> processed = new HashSet<>();
+        Map<String, String> lookup = new HashMap<>();
+        for (Message message : messages) {
+            String key = MessageKeys.of(message);
+            if (key == null) {
+                continue;
+            }
+            String normalized = normalize(key);
+            if (seenRecently(queue, normalized)) {
+                processed.add(key);
+            } else {
+                lookup.put(normalized, key);
+            }
+        }
+        if (!lookup.isEmpty()) {
+            storeLookups.increment();
+            for (String normalized : store.existing(queue, lookup.keySet())) {
+                recent.put(queue + '|' + normalized, Boolean.TRUE);
+                duplicates.increment();
+                processed.add(lookup.get(normalized));
+            }
+        }
+        return processed;
+    }
+
+    public void markProcessed(String queue, String key) {
+        markProcessed(queue, List.of(key));
+    }
+
+    // 内存结构先更新；持久化失败只影响重启后的判重，不让已经成功的消息重新投递
+    public void markProcessed(String queue, Collection<String> keys) {
+        List<String> normalized = keys.stream().map(this::normalize).toList();
+        for (String key : normalized) {
+            recent.put(queue + '|' + key, Boolean.TRUE);
+        }
+        try {
+            store.record(queue, normalized);
+        } catch (Exception e) {
+            logger.warn("Failed to persist {} processed keys for {}: {}", normalized.size(), queue, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("lruHits", lruHits.sum());
+        metrics.put("storeLookups", storeLookups.sum());
+        metrics.put("duplicates", duplicates.sum());
+        metrics.put("lruSize", recent.size());
+        return metrics;
+    }
+
+    @Scheduled(cron = "${dedupe.purge-cron:0 15 3 * * *}")
+    public void purgeExpired() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(retentionHours);
+        int purged = 0;
+        int deleted;
+        do {
+            deleted = store.purgeBefore(cutoff, 5000);
+            purged += deleted;
+        } while (deleted > 0);
+        if (purged > 0) {
+            logger.info("Purged {} processed message keys older than {}", purged, cutoff);
+        }
+    }
+
+    private boolean seenRecently(String queue, String key) {
+        if (recent.get(queue + '|' + key) == null) {
+            return false;
+        }
+        lruHits.increment();
+        duplicates.increment();
+        return true;
+    }
+
+    private static Set<String> parseQueues(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private String normalize(String key) {
+        if (key.length() <= MAX_KEY_LENGTH) {
+            return key;
+        }
+        try {
+            return "sha256:" + HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.fintech.common.dedupe;
+
+import com.example.fintech.common.event.AccountBalanceEvent;
+import com.example.fintech.common.event.NotificationEvent;
+import com.example.fintech.common.event.PrepareVoteEvent;
+import com.example.fintech.common.event.TransactionEvent;
+import org.springframework.amqp.core.Message;
+
+/**
+ * Dedupe keys for AMQP messages. Producers stamp a key derived from the event content, so a
+ * re-publish of the same event (retry, outbox re-send, duplicate send) carries the same key.
+ */
+public final class MessageKeys {
+
+    public static final String EVENT_KEY_HEADER = "x-event-key";
+
+    private MessageKeys() {
+    }
+
+    // 同一笔交易的不同状态是不同的事件，所以键里带上状态
+    public static String eventKey(Object event) {
+        if (event instanceof TransactionEvent e) {
+            return e.getTransactionId() == null ? null : "txn:" + e.getTransactionId() + ":" + e.getStatus();
+        } else if (event instanceof AccountBalanceEvent e) {
+            return "bal:" + e.getAccountNumber() + ":" + e.getOperation() + ":" + e.getTimestamp() + ":" + e.getNewBalance();
+        } else if (event instanceof NotificationEvent e) {
+            return "ntf:" + e.getUserId() + ":" + e.getType() + ":" + e.getTimestamp() + ":" + e.getTitle();
+        } else if (event instanceof PrepareVoteEvent e) {
+            return "vote:" + e.getTransactionId() + ":" + e.getParticipant();
+        }
+        return null;
+    }
+
+    // 优先用生产者写入的事件键，其次是 message id；都没有的消息不参与去重
+    public static String of(Message message) {
+        Object key = message.getMessageProperties().getHeader(EVENT_KEY_HEADER);
+        if (key != null) {
+            return key.toString();
+        }
+        return message.getMessageProperties().getMessageId();
+    }
+}
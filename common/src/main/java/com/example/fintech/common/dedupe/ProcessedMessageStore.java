@@ -0,0 +1,57 @@
+package com.example.fintech.common.dedupe;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * processed_messages access.
+ */
+@Component
+@ConditionalOnProperty(name = "dedupe.enabled", havingValue = "true")
+public class ProcessedMessageStore {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public boolean exists(String queue, String key) {
+        return !jdbcTemplate.queryForList(
+                "SELECT 1 FROM processed_messages WHERE queue_name = ? AND message_key = ? LIMIT 1",
+                Integer.class, queue, key).isEmpty();
+    }
+
+    public Set<String> existing(String queue, Collection<String> keys) {
+        return new HashSet<>(namedJdbcTemplate.queryForList(
+                "SELECT message_key FROM processed_messages WHERE queue_name = :queue AND message_key IN (:keys)",
+                new MapSqlParameterSource().addValue("queue", queue).addValue("keys", keys), String.class));
+    }
+
+    public void record(String queue, Collection<String> keys) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            rows.add(new Object[]{queue, key, now});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT IGNORE INTO processed_messages (queue_name, message_key, processed_at) VALUES (?, ?, ?)", rows);
+    }
+
+    public int purgeBefore(LocalDateTime cutoff, int limit) {
+        return jdbcTemplate.update("DELETE FROM processed_messages WHERE processed_at < ? LIMIT ?",
+                Timestamp.valueOf(cutoff), limit);
+    }
+}
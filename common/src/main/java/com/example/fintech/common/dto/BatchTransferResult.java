@@ -0,0 +1,19 @@
+package com.example.fintech.common.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchTransferResult {
+    private int index;
+    private String fromAccount;
+    private String toAccount;
+    private BigDecimal amount;
+    private boolean success;
+    private String message;
+}
@@ -0,0 +1,29 @@
+package com.example.fintech.common.dto;
+
+import com.example.fintech.common.enums.TransactionStatus;
+import com.example.fintech.common.enums.TransactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * History row: transaction columns plus the account numbers on both sides, read with a JPQL
+ * constructor expression instead of loading Transaction and its two Account entities.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionSummary {
+    private Long id;
+    private String transactionId;
+    private TransactionType type;
+    private TransactionStatus status;
+    private BigDecimal amount;
+    private String description;
+    private String fromAccountNumber;
+    private String toAccountNumber;
+    private LocalDateTime createdAt;
+}
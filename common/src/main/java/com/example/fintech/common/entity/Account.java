@@ -26,6 +26,11 @@ public class Account {
     @Column(nullable = false, precision = 19, scale = 4)
     private BigDecimal balance;
 
+    // 有效冻结（funds_holds 中 ACTIVE）的合计金额，可用余额 = balance - heldBalance；只通过UPDATE语句维护
+    @Column(name = "held_balance", updatable = false,
+            columnDefinition = "DECIMAL(19,4) NOT NULL DEFAULT 0")
+    private BigDecimal heldBalance = BigDecimal.ZERO;
+
     @Column(nullable = false)
     private String currency;
 
@@ -35,6 +40,10 @@ public class Account {
     @Column(nullable = false)
     private String status = "ACTIVE";
 
+    // 热点账户的子余额槽数量，为空或0表示不分槽；分槽后总余额 = balance + 各槽余额之和
+    @Column(name = "balance_slots")
+    private Integer balanceSlots;
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
@@ -0,0 +1,29 @@
+package com.example.fintech.common.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "account_number_sequences")
+public class AccountNumberSequence {
+
+    @Id
+    @Column(name = "sequence_name", length = 64)
+    private String sequenceName;
+
+    // 下一个可租用号段的起始值
+    @Column(name = "next_value", nullable = false)
+    private Long nextValue;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.fintech.common.entity;
+
+import com.example.fintech.common.enums.TransactionType;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "daily_account_aggregates", uniqueConstraints = @UniqueConstraint(
+        name = "uk_daily_aggregate", columnNames = {"account_number", "agg_date", "transaction_type"}))
+public class DailyAccountAggregate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "account_number", nullable = false)
+    private String accountNumber;
+
+    @Column(name = "agg_date", nullable = false)
+    private LocalDate aggDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "transaction_type", nullable = false, length = 16)
+    private TransactionType transactionType;
+
+    @Column(name = "txn_count", nullable = false)
+    private long txnCount;
+
+    @Column(name = "debit_total", nullable = false, precision = 19, scale = 4)
+    private BigDecimal debitTotal;
+
+    @Column(name = "credit_total", nullable = false, precision = 19, scale = 4)
+    private BigDecimal creditTotal;
+
+    // 当天该类型第一笔交易前 / 最后一笔交易后的余额
+    @Column(name = "opening_balance", precision = 19, scale = 4)
+    private BigDecimal openingBalance;
+
+    @Column(name = "closing_balance", precision = 19, scale = 4)
+    private BigDecimal closingBalance;
+
+    @Column(name = "first_event_at", nullable = false)
+    private LocalDateTime firstEventAt;
+
+    @Column(name = "last_event_at", nullable = false)
+    private LocalDateTime lastEventAt;
+}
@@ -9,7 +9,8 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "distributed_transactions")
+@Table(name = "distributed_transactions",
+        indexes = @Index(name = "idx_dtx_status_updated", columnList = "status, updated_at"))
 public class DistributedTransaction {
 
     @Id
@@ -35,7 +36,7 @@ public class DistributedTransaction {
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
-    @Column(nullable = false)
+    @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
 
@@ -0,0 +1,31 @@
+package com.example.fintech.common.entity;
+
+import com.example.fintech.common.enums.DistributedTransactionStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "distributed_transaction_log",
+        indexes = @Index(name = "idx_dtx_log_transaction", columnList = "transaction_id"))
+public class DistributedTransactionTransition {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "transaction_id", nullable = false)
+    private String transactionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private DistributedTransactionStatus status;
+
+    @Column(length = 1000)
+    private String metadata;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
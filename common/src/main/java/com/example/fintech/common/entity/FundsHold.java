@@ -0,0 +1,51 @@
+package com.example.fintech.common.entity;
+
+import com.example.fintech.common.enums.HoldStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "funds_holds", indexes = {
+        @Index(name = "idx_funds_hold_account_status", columnList = "account_number, status"),
+        @Index(name = "idx_funds_hold_status_expires", columnList = "status, expires_at")
+})
+public class FundsHold {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // 业务方生成的冻结ID（如Saga载荷中的holdId），重复冻结时据此去重
+    @Column(name = "hold_id", unique = true, nullable = false, length = 64)
+    private String holdId;
+
+    @Column(name = "account_number", nullable = false)
+    private String accountNumber;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private HoldStatus status;
+
+    // 为空表示不会过期，只能由业务方（如两阶段提交协调者的决议）捕获或释放
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.fintech.common.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "ledger_flush_state")
+public class LedgerFlushState {
+
+    // 日志文件名（如 shard-0），或恢复标记 recovery
+    @Id
+    @Column(name = "journal", length = 64)
+    private String journal;
+
+    // 已写入 accounts 表的最大写回批次
+    @Column(name = "epoch", nullable = false)
+    private Long epoch;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,27 @@
+package com.example.fintech.common.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "processed_messages",
+        uniqueConstraints = @UniqueConstraint(name = "uk_processed_queue_key", columnNames = {"queue_name", "message_key"}),
+        indexes = @Index(name = "idx_processed_at", columnList = "processed_at"))
+public class ProcessedMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "queue_name", nullable = false, length = 100)
+    private String queueName;
+
+    @Column(name = "message_key", nullable = false, length = 128)
+    private String messageKey;
+
+    @Column(name = "processed_at", nullable = false)
+    private LocalDateTime processedAt;
+}
@@ -0,0 +1,33 @@
+package com.example.fintech.common.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "sagas", indexes = @Index(name = "idx_saga_status_updated", columnList = "status, updated_at"))
+public class Saga {
+
+    @Id
+    @Column(name = "saga_id", length = 36)
+    private String sagaId;
+
+    // 用于恢复时找到对应的 SagaStepFactory
+    @Column(name = "saga_type", nullable = false, length = 64)
+    private String sagaType;
+
+    // 重建步骤所需的参数（JSON）
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,31 @@
+package com.example.fintech.common.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "saga_step_log", indexes = @Index(name = "idx_saga_step_log_saga", columnList = "saga_id"))
+public class SagaStepLog {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "saga_id", nullable = false, length = 36)
+    private String sagaId;
+
+    @Column(name = "step_name", nullable = false, length = 64)
+    private String stepName;
+
+    @Column(nullable = false, length = 24)
+    private String state;
+
+    @Column(length = 512)
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
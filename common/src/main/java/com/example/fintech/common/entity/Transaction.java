@@ -10,7 +10,10 @@ import java.util.Objects;
 
 @Data
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+        @Index(name = "idx_transactions_from_created", columnList = "from_account_id, created_at, id"),
+        @Index(name = "idx_transactions_to_created", columnList = "to_account_id, created_at, id")
+})
 public class Transaction {
 
     @Id
@@ -42,7 +45,7 @@ public class Transaction {
     @Column(length = 500)
     private String description;
 
-    @Column(nullable = false)
+    @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
     @Column(nullable = false)
@@ -60,6 +63,10 @@ public class Transaction {
     @Column(precision = 19, scale = 4)
     private BigDecimal toAccountBalanceAfter;
 
+    // 计入日汇总的时间，只由汇总任务写入，防止实体保存时覆盖
+    @Column(name = "aggregated_at", insertable = false, updatable = false)
+    private LocalDateTime aggregatedAt;
+
     @PrePersist
     protected void onCreate(){
         createdAt = LocalDateTime.now();
@@ -0,0 +1,8 @@
+package com.example.fintech.common.enums;
+
+public enum HoldStatus {
+    ACTIVE,
+    CAPTURED,
+    RELEASED,
+    EXPIRED
+}
@@ -0,0 +1,18 @@
+package com.example.fintech.common.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PrepareVoteEvent {
+    private String transactionId;
+    private String participant;
+    private boolean prepared;
+    private String reason;
+    private LocalDateTime timestamp;
+}
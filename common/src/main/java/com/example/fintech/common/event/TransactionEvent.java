@@ -19,4 +19,7 @@ public class TransactionEvent {
     private String status;
     private LocalDateTime timestamp;
     private String description;
+    // 交易发生前双方余额，用于日汇总的期初/期末余额
+    private BigDecimal fromBalanceBefore;
+    private BigDecimal toBalanceBefore;
 }
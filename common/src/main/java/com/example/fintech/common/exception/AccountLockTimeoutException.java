@@ -0,0 +1,7 @@
+package com.example.fintech.common.exception;
+
+public class AccountLockTimeoutException extends RuntimeException {
+    public AccountLockTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.fintech.common.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends outbox rows to RabbitMQ.
+ *
+ * Each relay thread locks a batch with SKIP LOCKED, publishes it over one channel, waits for the
+ * publisher confirms and deletes the confirmed rows in the same transaction. Threads and service
+ * instances therefore never send the same row concurrently; a crash between publish and delete
+ * re-sends the batch, so consumers must tolerate duplicates.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final String SELECT_BATCH =
+            "SELECT id, exchange, routing_key, payload_type, payload, created_at FROM outbox_messages " +
+                    "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${outbox.relay.threads:2}")
+    private int relayThreads;
+
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.relay.poll-interval-ms:200}")
+    private long pollIntervalMillis;
+
+    @Value("${outbox.relay.confirm-timeout-ms:10000}")
+    private long confirmTimeoutMillis;
+
+    private TransactionTemplate transactionTemplate;
+    private final List<Thread> relays = new ArrayList<>();
+    private volatile boolean running;
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder unconfirmed = new LongAdder();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+
+    private record Row(long id, String exchange, String routingKey, String payloadType, String payload,
+                       LocalDateTime createdAt) {
+    }
+
+    // 等表结构就绪后再开始轮询
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        for (int i = 0; i < relayThreads; i++) {
+            Thread thread = new Thread(this::relayLoop, "outbox-relay-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            relays.add(thread);
+        }
+        logger.info("Outbox relay started with {} threads", relayThreads);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : relays) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("relayed", relayed.sum());
+        metrics.put("batches", batches.sum());
+        metrics.put("unconfirmed", unconfirmed.sum());
+        metrics.put("lastLagMillis", lastLagMillis.get());
+        List<Timestamp> oldest = jdbcTemplate.queryForList(
+                "SELECT created_at FROM outbox_messages ORDER BY id LIMIT 1", Timestamp.class);
+        metrics.put("oldestPendingAgeMillis", oldest.isEmpty()
+                ? 0 : Duration.between(oldest.get(0).toLocalDateTime(), LocalDateTime.now()).toMillis());
+        return metrics;
+    }
+
+    private void relayLoop() {
+        while (running) {
+            try {
+                // 满批说明还有积压，立即取下一批
+                if (relayBatch() < batchSize) {
+                    Thread.sleep(pollIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Outbox relay batch failed: {}", e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int relayBatch() {
+        Integer delivered = transactionTemplate.execute(status -> {
+            List<Row> rows = jdbcTemplate.query(SELECT_BATCH, (rs, rowNum) -> new Row(
+                    rs.getLong("id"),
+                    rs.getString("exchange"),
+                    rs.getString("routing_key"),
+                    rs.getString("payload_type"),
+                    rs.getString("payload"),
+                    rs.getTimestamp("created_at").toLocalDateTime()), batchSize);
+            if (rows.isEmpty()) {
+                return 0;
+            }
+
+            List<Long> confirmedIds = publish(rows);
+            if (!confirmedIds.isEmpty()) {
+                namedJdbcTemplate.update("DELETE FROM outbox_messages WHERE id IN (:ids)", Map.of("ids", confirmedIds));
+            }
+
+            batches.increment();
+            relayed.add(confirmedIds.size());
+            lastLagMillis.set(Duration.between(rows.get(0).createdAt(), LocalDateTime.now()).toMillis());
+            return confirmedIds.size();
+        });
+        return delivered == null ? 0 : delivered;
+    }
+
+    // 返回已被broker确认的行；未确认或被退回的行留在表里等下一轮
+    private List<Long> publish(List<Row> rows) {
+        List<CorrelationData> correlations = new ArrayList<>(rows.size());
+        rabbitTemplate.invoke(operations -> {
+            for (Row row : rows) {
+                Object payload;
+                try {
+                    payload = objectMapper.readValue(row.payload(), Class.forName(row.payloadType()));
+                } catch (Exception e) {
+                    logger.error("Cannot decode outbox message {} of type {}: {}", row.id(), row.payloadType(), e.getMessage());
+                    correlations.add(null);
+                    continue;
+                }
+                CorrelationData correlationData = new CorrelationData("outbox-" + row.id());
+                operations.convertAndSend(row.exchange(), row.routingKey(), payload, correlationData);
+                correlations.add(correlationData);
+            }
+            return null;
+        });
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        List<Long> confirmedIds = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            CorrelationData correlationData = correlations.get(i);
+            if (correlationData == null) {
+                continue;
+            }
+            try {
+                CorrelationData.Confirm confirm = correlationData.getFuture()
+                        .get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                if (confirm.isAck() && correlationData.getReturned() == null) {
+                    confirmedIds.add(rows.get(i).id());
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // 超时或连接断开，本行下一轮重发
+            }
+            unconfirmed.increment();
+        }
+        return confirmedIds;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.fintech.common.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes events into the outbox table inside the caller's transaction, so an event exists
+ * exactly when the business change it describes has committed. {@link OutboxRelay} sends them.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class OutboxWriter {
+
+    private static final String INSERT =
+            "INSERT INTO outbox_messages (exchange, routing_key, payload_type, payload, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(String exchange, String routingKey, Object event) {
+        jdbcTemplate.update(INSERT, row(exchange, routingKey, event, Timestamp.valueOf(LocalDateTime.now())));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void appendAll(String exchange, String routingKey, List<?> events) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (Object event : events) {
+            rows.add(row(exchange, routingKey, event, now));
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+    }
+
+    private Object[] row(String exchange, String routingKey, Object event, Timestamp now) {
+        try {
+            return new Object[]{exchange, routingKey, event.getClass().getName(),
+                    objectMapper.writeValueAsString(event), now};
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize outbox event " + event.getClass().getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.fintech.common.saga;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-ahead log for sagas (tables sagas / saga_step_log).
+ *
+ * Writes from all running sagas are queued and flushed by one writer thread in batches, one
+ * transaction per batch. Each returned future completes once its record is committed. Step
+ * records also bump sagas.updated_at in the same transaction, so a saga that is still making
+ * progress is never claimed as stale by recovery.
+ */
+@Component
+public class SagaLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SagaLog.class);
+
+    public static final String SAGA_RUNNING = "RUNNING";
+    public static final String SAGA_COMPENSATING = "COMPENSATING";
+    public static final String SAGA_RECOVERING = "RECOVERING";
+    public static final String SAGA_COMPLETED = "COMPLETED";
+    public static final String SAGA_COMPENSATED = "COMPENSATED";
+    public static final String SAGA_FAILED = "FAILED";
+
+    public static final String STEP_STARTED = "STARTED";
+    public static final String STEP_COMPLETED = "COMPLETED";
+    public static final String STEP_FAILED = "FAILED";
+    public static final String STEP_COMPENSATING = "COMPENSATING";
+    public static final String STEP_COMPENSATED = "COMPENSATED";
+    public static final String STEP_COMPENSATION_FAILED = "COMPENSATION_FAILED";
+
+    private static final String INSERT_SAGA =
+            "INSERT INTO sagas (saga_id, saga_type, payload, status, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_SAGA = "UPDATE sagas SET status = ?, updated_at = ? WHERE saga_id = ?";
+    private static final String INSERT_STEP =
+            "INSERT INTO saga_step_log (saga_id, step_name, state, error, created_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String TOUCH_SAGAS = "UPDATE sagas SET updated_at = :now WHERE saga_id IN (:ids)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${saga.log.batch-size:200}")
+    private int batchSize;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private TransactionTemplate transactionTemplate;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder records = new LongAdder();
+
+    private record Entry(String sql, Object[] args, CompletableFuture<Void> done) {
+    }
+
+    public record PersistedSaga(String sagaId, String sagaType, String payload, String status) {
+    }
+
+    public record StepRecord(String stepName, String state) {
+    }
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        writer = new Thread(this::writeLoop, "saga-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public CompletableFuture<Void> sagaStarted(String sagaId, String sagaType, String payload) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return enqueue(INSERT_SAGA, sagaId, sagaType, payload, SAGA_RUNNING, now, now);
+    }
+
+    public CompletableFuture<Void> sagaStatus(String sagaId, String status) {
+        return enqueue(UPDATE_SAGA, status, Timestamp.valueOf(LocalDateTime.now()), sagaId);
+    }
+
+    public CompletableFuture<Void> stepState(String sagaId, String stepName, String state, String error) {
+        if (error != null && error.length() > 512) {
+            error = error.substring(0, 512);
+        }
+        return enqueue(INSERT_STEP, sagaId, stepName, state, error, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * Claims unfinished sagas of the given types that have not been touched since the cutoff.
+     * The conditional update makes sure only one instance recovers each saga.
+     */
+    public List<PersistedSaga> claimStale(Collection<String> sagaTypes, LocalDateTime cutoff) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("types", sagaTypes)
+                .addValue("statuses", List.of(SAGA_RUNNING, SAGA_COMPENSATING, SAGA_RECOVERING))
+                .addValue("cutoff", Timestamp.valueOf(cutoff));
+        List<PersistedSaga> candidates = namedJdbcTemplate.query(
+                "SELECT saga_id, saga_type, payload, status FROM sagas " +
+                        "WHERE status IN (:statuses) AND saga_type IN (:types) AND updated_at < :cutoff",
+                params,
+                (rs, rowNum) -> new PersistedSaga(rs.getString("saga_id"), rs.getString("saga_type"),
+                        rs.getString("payload"), rs.getString("status")));
+
+        List<PersistedSaga> claimed = new ArrayList<>();
+        for (PersistedSaga saga : candidates) {
+            int updated = jdbcTemplate.update(
+                    "UPDATE sagas SET status = ?, updated_at = ? WHERE saga_id = ? AND status = ? AND updated_at < ?",
+                    SAGA_RECOVERING, Timestamp.valueOf(LocalDateTime.now()), saga.sagaId(), saga.status(),
+                    Timestamp.valueOf(cutoff));
+            if (updated == 1) {
+                claimed.add(saga);
+            }
+        }
+        return claimed;
+    }
+
+    public List<StepRecord> loadSteps(String sagaId) {
+        return jdbcTemplate.query(
+                "SELECT step_name, state FROM saga_step_log WHERE saga_id = ? ORDER BY id",
+                (rs, rowNum) -> new StepRecord(rs.getString("step_name"), rs.getString("state")),
+                sagaId);
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    private CompletableFuture<Void> enqueue(String sql, Object... args) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (!running) {
+            done.completeExceptionally(new IllegalStateException("Saga log is stopped"));
+            return done;
+        }
+        queue.add(new Entry(sql, args, done));
+        return done;
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Entry> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // 相邻的同类语句合并成一次JDBC批量执行，保持整体顺序不变
+                int start = 0;
+                while (start < batch.size()) {
+                    String sql = batch.get(start).sql();
+                    int end = start;
+                    List<Object[]> args = new ArrayList<>();
+                    while (end < batch.size() && batch.get(end).sql().equals(sql)) {
+                        args.add(batch.get(end).args());
+                        end++;
+                    }
+                    jdbcTemplate.batchUpdate(sql, args);
+                    start = end;
+                }
+
+                // 步骤状态的写入同时刷新Saga的更新时间，作为恢复扫描的心跳
+                Set<Object> touched = new HashSet<>();
+                for (Entry entry : batch) {
+                    if (INSERT_STEP.equals(entry.sql())) {
+                        touched.add(entry.args()[0]);
+                    }
+                }
+                if (!touched.isEmpty()) {
+                    namedJdbcTemplate.update(TOUCH_SAGAS, new MapSqlParameterSource()
+                            .addValue("now", Timestamp.valueOf(LocalDateTime.now()))
+                            .addValue("ids", touched));
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Failed to write {} saga log records: {}", batch.size(), e.getMessage());
+            batch.forEach(entry -> entry.done().completeExceptionally(e));
+            return;
+        }
+        batches.increment();
+        records.add(batch.size());
+        batch.forEach(entry -> entry.done().complete(null));
+    }
+}
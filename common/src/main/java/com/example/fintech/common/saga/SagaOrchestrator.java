@@ -1,43 +1,350 @@
 package com.example.fintech.common.saga;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Runs sagas asynchronously as a DAG of steps.
+ *
+ * A step starts once all steps it depends on have completed; independent steps run in parallel.
+ * Every transition is written to {@link SagaLog} before the next action, so after a crash the
+ * completed steps can be compensated in reverse completion order. Steps whose outcome is unknown
+ * are compensated only if they declare it safe; otherwise the saga is marked FAILED for manual review.
+ */
 @Component
 public class SagaOrchestrator {
     private static final Logger logger = LoggerFactory.getLogger(SagaOrchestrator.class);
 
-    public void executeSaga(List<SagaStep> steps) {
-        Stack<SagaStep> executedSteps =  new Stack<>();
+    private static final TypeReference<Map<String, String>> PAYLOAD_TYPE = new TypeReference<>() {
+    };
 
-        try {
+    @Autowired
+    private SagaLog sagaLog;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 延迟获取，避免与依赖编排器执行器的步骤工厂形成循环依赖
+    @Autowired
+    private ObjectProvider<SagaStepFactory> stepFactories;
+
+    @Value("${saga.executor-threads:16}")
+    private int executorThreads;
+
+    @Value("${saga.recovery.stale-after-ms:60000}")
+    private long staleAfterMillis;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(executorThreads, r -> {
+            Thread thread = new Thread(r, "saga-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // 步骤中的阻塞操作（数据库事务）应提交到此执行器
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public CompletableFuture<Void> executeSaga(String sagaType, Map<String, String> payload, List<SagaStep> steps) {
+        List<SagaStep> ordered = topologicalOrder(steps);
+        String sagaId = UUID.randomUUID().toString();
+
+        return sagaLog.sagaStarted(sagaId, sagaType, toJson(payload))
+                .thenComposeAsync(v -> new SagaRun(sagaId, ordered).start(), executor);
+    }
+
+    private class SagaRun {
+        private final String sagaId;
+        private final List<SagaStep> steps;
+        private final Deque<SagaStep> completed = new ConcurrentLinkedDeque<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        SagaRun(String sagaId, List<SagaStep> steps) {
+            this.sagaId = sagaId;
+            this.steps = steps;
+        }
+
+        CompletableFuture<Void> start() {
+            Map<String, CompletableFuture<Void>> futures = new HashMap<>();
             for (SagaStep step : steps) {
-                logger.info("Executing saga step: {}", step.getStepName());
-                step.execute();
-                executedSteps.push(step);
+                CompletableFuture<?>[] dependencies = step.dependsOn().stream()
+                        .map(futures::get)
+                        .toArray(CompletableFuture[]::new);
+                futures.put(step.getStepName(), CompletableFuture.allOf(dependencies)
+                        .thenComposeAsync(v -> runStep(step), executor));
             }
-            logger.info("Saga completed successfully");
-        } catch (Exception e) {
-            logger.error("Saga failed, starting compensation", e);
-            compensate(executedSteps);
-            throw new RuntimeException("Saga execution failed", e);
+
+            // allOf 在所有已启动的步骤结束后才完成，保证补偿时不会有步骤仍在执行
+            return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                    .handleAsync((v, e) -> e, executor)
+                    .thenCompose(e -> {
+                        if (e == null) {
+                            logger.info("Saga {} completed successfully", sagaId);
+                            return sagaLog.sagaStatus(sagaId, SagaLog.SAGA_COMPLETED);
+                        }
+                        logger.error("Saga {} failed, starting compensation", sagaId, unwrap(e));
+                        return compensate();
+                    });
+        }
+
+        private CompletableFuture<Void> runStep(SagaStep step) {
+            // 已有步骤失败时不再启动新的步骤
+            if (failure.get() != null) {
+                return CompletableFuture.failedFuture(failure.get());
+            }
+            logger.info("Executing saga step: {}", step.getStepName());
+            return sagaLog.stepState(sagaId, step.getStepName(), SagaLog.STEP_STARTED, null)
+                    .thenCompose(v -> step.execute())
+                    .handle((v, e) -> e)
+                    .thenCompose(e -> {
+                        if (e == null) {
+                            // 步骤已生效，先登记再写日志：完成状态写入失败时也会被补偿
+                            completed.push(step);
+                            return sagaLog.stepState(sagaId, step.getStepName(), SagaLog.STEP_COMPLETED, null)
+                                    .handle((v, logError) -> logError)
+                                    .thenCompose(logError -> {
+                                        if (logError == null) {
+                                            return CompletableFuture.<Void>completedFuture(null);
+                                        }
+                                        // 日志与实际状态不一致时不能继续执行，按Saga失败处理
+                                        Throwable cause = unwrap(logError);
+                                        failure.compareAndSet(null, cause);
+                                        logger.error("Saga {} failed to record completion of step {}",
+                                                sagaId, step.getStepName(), cause);
+                                        return CompletableFuture.<Void>failedFuture(cause);
+                                    });
+                        }
+                        Throwable cause = unwrap(e);
+                        failure.compareAndSet(null, cause);
+                        // 失败状态写入失败不影响结果，恢复时该步骤仍按 STARTED 处理
+                        return sagaLog.stepState(sagaId, step.getStepName(), SagaLog.STEP_FAILED, cause.getMessage())
+                                .handle((v, logError) -> (Void) null)
+                                .thenCompose(x -> CompletableFuture.<Void>failedFuture(cause));
+                    });
+        }
+
+        private CompletableFuture<Void> compensate() {
+            List<SagaStep> toCompensate = new ArrayList<>(completed);
+            return sagaLog.sagaStatus(sagaId, SagaLog.SAGA_COMPENSATING)
+                    .thenCompose(v -> compensateInOrder(sagaId, toCompensate, false))
+                    .thenCompose(v -> CompletableFuture.failedFuture(
+                            new RuntimeException("Saga execution failed", failure.get())));
         }
     }
 
-    private void compensate(Stack<SagaStep> executedSteps) {
-        while (!executedSteps.isEmpty()) {
-            SagaStep step = executedSteps.pop();
-            try {
+    /**
+     * Compensates the given steps one after another and records the final saga status.
+     * Completes normally even if some compensation fails; that saga is marked FAILED.
+     */
+    private CompletableFuture<Void> compensateInOrder(String sagaId, List<SagaStep> steps, boolean needsReview) {
+        CompletableFuture<Boolean> chain = CompletableFuture.completedFuture(!needsReview);
+        for (SagaStep step : steps) {
+            chain = chain.thenCompose(ok -> {
                 logger.info("compensating step: {}", step.getStepName());
-                step.compensate();
+                return sagaLog.stepState(sagaId, step.getStepName(), SagaLog.STEP_COMPENSATING, null)
+                        .thenCompose(v -> step.compensate())
+                        .handle((v, e) -> e)
+                        .thenCompose(e -> {
+                            if (e == null) {
+                                return sagaLog.stepState(sagaId, step.getStepName(), SagaLog.STEP_COMPENSATED, null)
+                                        .thenApply(x -> ok);
+                            }
+                            Throwable cause = unwrap(e);
+                            logger.error("Compensation failed for step: {}", step.getStepName(), cause);
+                            return sagaLog.stepState(sagaId, step.getStepName(),
+                                            SagaLog.STEP_COMPENSATION_FAILED, cause.getMessage())
+                                    .thenApply(x -> false);
+                        });
+            });
+        }
+        return chain.thenCompose(ok -> sagaLog.sagaStatus(sagaId, ok ? SagaLog.SAGA_COMPENSATED : SagaLog.SAGA_FAILED));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOnStartup() {
+        recoverStaleSagas();
+    }
+
+    @Scheduled(fixedDelayString = "${saga.recovery.interval-ms:30000}",
+            initialDelayString = "${saga.recovery.interval-ms:30000}")
+    public void recoverStaleSagas() {
+        Map<String, SagaStepFactory> factories = stepFactories.orderedStream()
+                .collect(Collectors.toMap(SagaStepFactory::getSagaType, Function.identity()));
+        if (factories.isEmpty()) {
+            return;
+        }
+
+        List<SagaLog.PersistedSaga> stale;
+        try {
+            stale = sagaLog.claimStale(factories.keySet(), LocalDateTime.now().minus(Duration.ofMillis(staleAfterMillis)));
+        } catch (Exception e) {
+            logger.warn("Saga recovery scan failed: {}", e.getMessage());
+            return;
+        }
+
+        for (SagaLog.PersistedSaga saga : stale) {
+            try {
+                recover(saga, factories.get(saga.sagaType())).join();
             } catch (Exception e) {
-                logger.error("Compensation failed for step: {}", step.getStepName());
+                logger.error("Saga {} recovery failed", saga.sagaId(), unwrap(e));
+            }
+        }
+    }
+
+    private CompletableFuture<Void> recover(SagaLog.PersistedSaga saga, SagaStepFactory factory) {
+        Map<String, SagaStep> steps = factory.createSteps(fromJson(saga.payload())).stream()
+                .collect(Collectors.toMap(SagaStep::getStepName, Function.identity()));
+
+        // 每个步骤的最后状态；已完成的步骤按完成顺序记录
+        Map<String, String> lastState = new LinkedHashMap<>();
+        List<String> completionOrder = new ArrayList<>();
+        for (SagaLog.StepRecord record : sagaLog.loadSteps(saga.sagaId())) {
+            lastState.put(record.stepName(), record.state());
+            if (SagaLog.STEP_COMPLETED.equals(record.state())) {
+                completionOrder.add(record.stepName());
+            }
+        }
+
+        // 所有步骤都已完成，只是未来得及记录Saga状态
+        if (steps.keySet().stream().allMatch(name -> SagaLog.STEP_COMPLETED.equals(lastState.get(name)))) {
+            logger.info("Saga {} had finished all steps, marking completed", saga.sagaId());
+            return sagaLog.sagaStatus(saga.sagaId(), SagaLog.SAGA_COMPLETED);
+        }
+
+        List<SagaStep> toCompensate = new ArrayList<>();
+        boolean needsReview = false;
+        for (Map.Entry<String, String> entry : lastState.entrySet()) {
+            SagaStep step = steps.get(entry.getKey());
+            boolean inDoubt = SagaLog.STEP_STARTED.equals(entry.getValue())
+                    || SagaLog.STEP_COMPENSATING.equals(entry.getValue());
+            if (inDoubt) {
+                if (step != null && step.isCompensationSafeWhenInDoubt()) {
+                    toCompensate.add(step);
+                } else {
+                    logger.error("Saga {} step {} is in doubt ({}), manual review required",
+                            saga.sagaId(), entry.getKey(), entry.getValue());
+                    needsReview = true;
+                }
+            }
+        }
+        for (int i = completionOrder.size() - 1; i >= 0; i--) {
+            String name = completionOrder.get(i);
+            if (!SagaLog.STEP_COMPLETED.equals(lastState.get(name))) {
+                continue;
+            }
+            if (steps.containsKey(name)) {
+                toCompensate.add(steps.get(name));
+            } else {
+                logger.error("Saga {} step {} no longer exists, manual review required", saga.sagaId(), name);
+                needsReview = true;
+            }
+        }
+
+        logger.warn("Recovering saga {} ({}): compensating {} steps", saga.sagaId(), saga.sagaType(), toCompensate.size());
+        return compensateInOrder(saga.sagaId(), toCompensate, needsReview);
+    }
+
+    private List<SagaStep> topologicalOrder(List<SagaStep> steps) {
+        Map<String, SagaStep> byName = new LinkedHashMap<>();
+        for (SagaStep step : steps) {
+            if (byName.put(step.getStepName(), step) != null) {
+                throw new IllegalArgumentException("Duplicate saga step: " + step.getStepName());
             }
         }
+
+        List<SagaStep> ordered = new ArrayList<>();
+        Map<String, Integer> visitState = new HashMap<>();
+        for (SagaStep step : steps) {
+            visit(step, byName, visitState, ordered);
+        }
+        return ordered;
+    }
+
+    private void visit(SagaStep step, Map<String, SagaStep> byName, Map<String, Integer> visitState,
+                       List<SagaStep> ordered) {
+        Integer state = visitState.get(step.getStepName());
+        if (state != null) {
+            if (state == 1) {
+                throw new IllegalArgumentException("Saga steps contain a cycle at: " + step.getStepName());
+            }
+            return;
+        }
+        visitState.put(step.getStepName(), 1);
+        for (String dependency : step.dependsOn()) {
+            SagaStep target = byName.get(dependency);
+            if (target == null) {
+                throw new IllegalArgumentException("Saga step " + step.getStepName() + " depends on unknown step " + dependency);
+            }
+            visit(target, byName, visitState, ordered);
+        }
+        visitState.put(step.getStepName(), 2);
+        ordered.add(step);
+    }
+
+    private String toJson(Map<String, String> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Saga payload is not serializable", e);
+        }
+    }
+
+    private Map<String, String> fromJson(String payload) {
+        try {
+            return objectMapper.readValue(payload, PAYLOAD_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Saga payload is not readable", e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
     }
 }
@@ -1,7 +1,20 @@
 package com.example.fintech.common.saga;
 
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
 public interface SagaStep {
-    void execute();
-    void compensate();
+    CompletionStage<Void> execute();
+    CompletionStage<Void> compensate();
     String getStepName();
+
+    // 依赖的步骤名；没有依赖关系的步骤并行执行
+    default Set<String> dependsOn() {
+        return Set.of();
+    }
+
+    // 崩溃后无法确定 execute 是否生效时，是否可以直接补偿（补偿对未执行的步骤无副作用）
+    default boolean isCompensationSafeWhenInDoubt() {
+        return false;
+    }
 }
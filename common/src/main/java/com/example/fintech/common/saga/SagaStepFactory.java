@@ -0,0 +1,13 @@
+package com.example.fintech.common.saga;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds the steps of a persisted saga from its payload, so sagas interrupted by a crash
+ * can be compensated after restart.
+ */
+public interface SagaStepFactory {
+    String getSagaType();
+    List<SagaStep> createSteps(Map<String, String> payload);
+}
@@ -3,20 +3,51 @@ package com.example.fintech.common.service;
 import com.example.fintech.common.config.RabbitMQConfig;
 import com.example.fintech.common.event.NotificationEvent;
 import com.example.fintech.common.event.AccountBalanceEvent;
+import com.example.fintech.common.event.PrepareVoteEvent;
 import com.example.fintech.common.event.TransactionEvent;
+import com.example.fintech.common.outbox.OutboxWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.ReturnedMessage;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
 
-import javax.annotation.PostConstruct;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Publishes domain events to RabbitMQ.
+ *
+ * In async mode (event.publisher.mode=async) fire-and-forget events — transaction, balance and
+ * notification — are only queued on the caller's thread. Publisher threads drain the queue in
+ * batches over one channel and track every message by sequence number until its correlated
+ * confirm arrives; nacked, returned or unconfirmed messages are re-queued after a backoff.
+ * Two-phase commit messages stay synchronous because the coordinator acts on publish failures.
+ *
+ * When the outbox is enabled, fire-and-forget events raised inside a read-write transaction are
+ * written to the outbox instead and commit or roll back together with the business change.
+ */
 @Service
 public class EventPublisher {
 
@@ -26,9 +57,55 @@ public class EventPublisher {
     @Autowired
     private RabbitTemplate rabbitTemplate;
 
+    @Autowired(required = false)
+    private OutboxWriter outboxWriter;
+
+    @Value("${event.publisher.mode:sync}")
+    private String mode;
+
+    @Value("${event.publisher.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${event.publisher.threads:2}")
+    private int publisherThreads;
+
+    @Value("${event.publisher.batch-size:100}")
+    private int batchSize;
+
+    @Value("${event.publisher.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${event.publisher.initial-backoff-ms:200}")
+    private long initialBackoffMillis;
+
+    @Value("${event.publisher.max-backoff-ms:30000}")
+    private long maxBackoffMillis;
+
+    @Value("${event.publisher.confirm-timeout-ms:30000}")
+    private long confirmTimeoutMillis;
+
+    private boolean async;
+    private volatile boolean running;
+    private BlockingQueue<OutboundMessage> queue;
+    private List<Thread> publishers;
+    private ScheduledExecutorService retryScheduler;
+
+    // 序号 -> 等待确认的消息，按发送顺序排列，超时扫描从最旧的开始
+    private final ConcurrentSkipListMap<Long, OutboundMessage> outstanding = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
     @PostConstruct
     public void init() {
         rabbitTemplate.setConfirmCallback((correlationData, ack, cause) -> {
+            if (correlationData instanceof SequencedCorrelationData sequenced) {
+                onConfirm(sequenced, ack, cause);
+                return;
+            }
             if (ack) {
                 logger.info("Message confirmed: {}", correlationData.getId());
             } else {
@@ -44,9 +121,73 @@ public class EventPublisher {
             // Handle returned message
             handleReturnedMessage(returned);
         });
+
+        async = "async".equalsIgnoreCase(mode);
+        if (!async) {
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        publishers = new ArrayList<>(publisherThreads);
+        for (int i = 0; i < publisherThreads; i++) {
+            Thread thread = new Thread(this::publishLoop, "event-publisher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            publishers.add(thread);
+        }
+
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "event-publisher-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepInterval = Math.max(confirmTimeoutMillis / 2, 1000);
+        retryScheduler.scheduleWithFixedDelay(this::expireUnconfirmed, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+
+        logger.info("Async event publisher started with {} threads, queue capacity {}", publisherThreads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!async) {
+            return;
+        }
+        // 先停止接收重试，再让发布线程把队列里剩下的消息发完
+        retryScheduler.shutdownNow();
+        running = false;
+        for (Thread thread : publishers) {
+            thread.join(5000);
+        }
+        if (!queue.isEmpty() || !outstanding.isEmpty()) {
+            logger.warn("Event publisher stopped with {} queued and {} unconfirmed messages",
+                    queue.size(), outstanding.size());
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("mode", async ? "async" : "sync");
+        if (async) {
+            metrics.put("queueDepth", queue.size());
+            metrics.put("outstandingConfirms", outstanding.size());
+        }
+        metrics.put("published", published.sum());
+        metrics.put("confirmed", confirmed.sum());
+        metrics.put("retried", retried.sum());
+        metrics.put("failed", failed.sum());
+        return metrics;
     }
 
     public void publishTransactionEvent(TransactionEvent event) {
+        if (writeToOutbox(RabbitMQConfig.TRANSACTION_EXCHANGE, RabbitMQConfig.TRANSACTION_ROUTING_KEY, event)) {
+            return;
+        }
+        if (async) {
+            enqueue(new OutboundMessage(RabbitMQConfig.TRANSACTION_EXCHANGE, RabbitMQConfig.TRANSACTION_ROUTING_KEY,
+                    event, "Transaction event for: " + event.getTransactionId()));
+            return;
+        }
         publishEventWithRetry(() -> {
             CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
             rabbitTemplate.convertAndSend(
@@ -56,18 +197,64 @@ public class EventPublisher {
                     correlationData
             );
 
+            logger.info("Transaction event published: {}", event.getTransactionId());
+        }, "Transaction event for: " + event.getTransactionId());
+    }
+
+    // 两阶段提交的 prepare 消息，投票回复到 replyTo 指定的队列
+    public void publishPrepareEvent(TransactionEvent event, String replyTo) {
+        publishEventWithRetry(() -> {
             rabbitTemplate.convertAndSend(
                     RabbitMQConfig.TRANSACTION_EXCHANGE,
-                    RabbitMQConfig.TRANSACTION_ROUTING_KEY,
+                    RabbitMQConfig.DTX_PREPARE_ROUTING_KEY,
                     event,
-                    correlationData
+                    message -> {
+                        message.getMessageProperties().setReplyTo(replyTo);
+                        return message;
+                    },
+                    new CorrelationData(UUID.randomUUID().toString())
             );
 
-            logger.info("Transaction event published: {}", event.getTransactionId());
-        }, "Transaction event for: " + event.getTransactionId());
+            logger.info("Prepare event published: {}", event.getTransactionId());
+        }, "Prepare event for: " + event.getTransactionId());
+    }
+
+    public void publishDecisionEvent(TransactionEvent event) {
+        publishEventWithRetry(() -> {
+            rabbitTemplate.convertAndSend(
+                    RabbitMQConfig.TRANSACTION_EXCHANGE,
+                    RabbitMQConfig.DTX_DECISION_ROUTING_KEY,
+                    event,
+                    new CorrelationData(UUID.randomUUID().toString())
+            );
+
+            logger.info("Decision event published: {} {}", event.getTransactionId(), event.getStatus());
+        }, "Decision event for: " + event.getTransactionId());
+    }
+
+    // 通过默认交换机直接投递到协调者的回复队列
+    public void publishPrepareVote(PrepareVoteEvent vote, String replyTo) {
+        publishEventWithRetry(() -> {
+            rabbitTemplate.convertAndSend(
+                    "",
+                    replyTo,
+                    vote,
+                    new CorrelationData(UUID.randomUUID().toString())
+            );
+
+            logger.info("Prepare vote published: {} prepared={}", vote.getTransactionId(), vote.isPrepared());
+        }, "Prepare vote for: " + vote.getTransactionId());
     }
 
     public void publishAccountBalanceEvent(AccountBalanceEvent event) {
+        if (writeToOutbox(RabbitMQConfig.ACCOUNT_EXCHANGE, RabbitMQConfig.BALANCE_ROUTING_KEY, event)) {
+            return;
+        }
+        if (async) {
+            enqueue(new OutboundMessage(RabbitMQConfig.ACCOUNT_EXCHANGE, RabbitMQConfig.BALANCE_ROUTING_KEY,
+                    event, "Balance event for account: " + event.getAccountNumber()));
+            return;
+        }
         publishEventWithRetry(() -> {
             CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
 
@@ -82,7 +269,48 @@ public class EventPublisher {
         }, "Balance event for account: " + event.getAccountNumber());
     }
 
+    // 一批事件复用同一个channel发送，确认仍由ConfirmCallback逐条处理
+    public void publishAccountBalanceEvents(List<AccountBalanceEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (inOutboxTransaction()) {
+            outboxWriter.appendAll(RabbitMQConfig.ACCOUNT_EXCHANGE, RabbitMQConfig.BALANCE_ROUTING_KEY, events);
+            return;
+        }
+        if (async) {
+            for (AccountBalanceEvent event : events) {
+                enqueue(new OutboundMessage(RabbitMQConfig.ACCOUNT_EXCHANGE, RabbitMQConfig.BALANCE_ROUTING_KEY,
+                        event, "Balance event for account: " + event.getAccountNumber()));
+            }
+            return;
+        }
+        publishEventWithRetry(() -> {
+            rabbitTemplate.invoke(operations -> {
+                for (AccountBalanceEvent event : events) {
+                    operations.convertAndSend(
+                            RabbitMQConfig.ACCOUNT_EXCHANGE,
+                            RabbitMQConfig.BALANCE_ROUTING_KEY,
+                            event,
+                            new CorrelationData(UUID.randomUUID().toString())
+                    );
+                }
+                return null;
+            });
+
+            logger.info("Published {} balance events", events.size());
+        }, events.size() + " balance events");
+    }
+
     public void publishNotificationEvent(NotificationEvent event) {
+        if (writeToOutbox(RabbitMQConfig.NOTIFICATION_EXCHANGE, RabbitMQConfig.NOTIFICATION_ROUTING_KEY, event)) {
+            return;
+        }
+        if (async) {
+            enqueue(new OutboundMessage(RabbitMQConfig.NOTIFICATION_EXCHANGE, RabbitMQConfig.NOTIFICATION_ROUTING_KEY,
+                    event, "Notification event for user: " + event.getUserId()));
+            return;
+        }
         publishEventWithRetry(() -> {
             CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
 
@@ -97,6 +325,134 @@ public class EventPublisher {
         }, "Notification event for user: " + event.getUserId());
     }
 
+    private boolean writeToOutbox(String exchange, String routingKey, Object event) {
+        if (!inOutboxTransaction()) {
+            return false;
+        }
+        outboxWriter.append(exchange, routingKey, event);
+        return true;
+    }
+
+    private boolean inOutboxTransaction() {
+        return outboxWriter != null
+                && TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    // 调用线程只负责入队，不等待broker；队列满说明broker长时间不可用，直接拒绝以形成背压
+    private void enqueue(OutboundMessage message) {
+        if (!queue.offer(message)) {
+            failed.increment();
+            throw new IllegalStateException("Event publisher queue is full, rejected " + message.description);
+        }
+    }
+
+    private void publishLoop() {
+        List<OutboundMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                OutboundMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                sendBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // 整批复用一个channel；先登记序号再发送，确认回调可能早于convertAndSend返回
+    private void sendBatch(List<OutboundMessage> batch) {
+        int[] sent = {0};
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (OutboundMessage message : batch) {
+                    long seq = sequence.incrementAndGet();
+                    message.sentAtNanos = System.nanoTime();
+                    outstanding.put(seq, message);
+                    try {
+                        operations.convertAndSend(message.exchange, message.routingKey, message.payload,
+                                new SequencedCorrelationData(seq));
+                    } catch (AmqpException e) {
+                        outstanding.remove(seq);
+                        throw e;
+                    }
+                    sent[0]++;
+                    published.increment();
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to publish batch of {} events after {} sent: {}", batch.size(), sent[0], e.getMessage());
+            for (int i = sent[0]; i < batch.size(); i++) {
+                retryLater(batch.get(i), e.getMessage());
+            }
+        }
+    }
+
+    // 在连接线程上执行，不能阻塞
+    private void onConfirm(SequencedCorrelationData correlationData, boolean ack, String cause) {
+        OutboundMessage message = outstanding.remove(correlationData.sequence);
+        if (message == null) {
+            return;
+        }
+        ReturnedMessage returned = correlationData.getReturned();
+        if (ack && returned == null) {
+            confirmed.increment();
+            return;
+        }
+        retryLater(message, returned != null ? "returned: " + returned.getReplyText() : "nacked: " + cause);
+    }
+
+    // 连接断开时可能既没有ack也没有nack，超时后按失败重发
+    private void expireUnconfirmed() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        Iterator<Map.Entry<Long, OutboundMessage>> it = outstanding.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, OutboundMessage> entry = it.next();
+            if (entry.getValue().sentAtNanos - cutoff > 0) {
+                break;
+            }
+            if (outstanding.remove(entry.getKey(), entry.getValue())) {
+                retryLater(entry.getValue(), "confirm timed out");
+            }
+        }
+    }
+
+    private void retryLater(OutboundMessage message, String reason) {
+        message.attempts++;
+        if (message.attempts >= maxAttempts) {
+            failed.increment();
+            logger.error("Giving up on {} after {} attempts: {}", message.description, message.attempts, reason);
+            return;
+        }
+        retried.increment();
+        long delay = Math.min(initialBackoffMillis << Math.min(message.attempts - 1, 20), maxBackoffMillis);
+        logger.warn("Re-publishing {} in {} ms (attempt {}/{}): {}",
+                message.description, delay, message.attempts + 1, maxAttempts, reason);
+        scheduleRequeue(message, delay);
+    }
+
+    private void scheduleRequeue(OutboundMessage message, long delayMillis) {
+        try {
+            retryScheduler.schedule(() -> {
+                if (!queue.offer(message)) {
+                    scheduleRequeue(message, maxBackoffMillis);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // 关闭过程中调度器已停止
+            failed.increment();
+            logger.error("Dropping {} during shutdown: {}", message.description, e.getMessage());
+        }
+    }
+
     private void publishEventWithRetry(Runnable publishAction, String eventDescription) {
         int attempts = 0;
         Exception lastException = null;
@@ -135,4 +491,29 @@ public class EventPublisher {
         // Could implement message reprocessing or dead letter handling
         logger.error("Implementing returned message handling");
     }
-}
\ No newline at end of file
+
+    private static final class OutboundMessage {
+        final String exchange;
+        final String routingKey;
+        final Object payload;
+        final String description;
+        volatile long sentAtNanos;
+        volatile int attempts;
+
+        OutboundMessage(String exchange, String routingKey, Object payload, String description) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.payload = payload;
+            this.description = description;
+        }
+    }
+
+    private static final class SequencedCorrelationData extends CorrelationData {
+        final long sequence;
+
+        SequencedCorrelationData(long sequence) {
+            super(String.valueOf(sequence));
+            this.sequence = sequence;
+        }
+    }
+}
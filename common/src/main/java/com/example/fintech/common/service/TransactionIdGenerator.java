@@ -0,0 +1,87 @@
+package com.example.fintech.common.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered transaction IDs: 41 bits of milliseconds since 2025-01-01, 10 bits of node id
+ * and a 12-bit per-millisecond sequence, rendered as "TXN" + 19 zero-padded digits.
+ *
+ * IDs sort by creation time, so inserts into the transaction_id index stay at the right edge.
+ * Uniqueness across instances relies on each instance having its own fintech.node-id, so startup
+ * fails when it is not set. Only the dev profile derives one from the process name, which can
+ * collide (in containers the pid is usually 1). Lazy, so services that scan this package without
+ * generating IDs do not need a node id.
+ */
+@Component
+@Lazy
+public class TransactionIdGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionIdGenerator.class);
+
+    private static final long EPOCH = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    public static final String DEV_PROFILE = "dev";
+
+    // 每个实例必须显式配置；仅 dev profile 下允许由主机名和进程号推导
+    @Value("${fintech.node-id:-1}")
+    private long configuredNodeId;
+
+    @Autowired
+    private Environment environment;
+
+    private long nodeId;
+
+    // 高位为上次使用的毫秒数，低12位为该毫秒内的序号
+    private final AtomicLong state = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (configuredNodeId >= 0) {
+            if (configuredNodeId > MAX_NODE_ID) {
+                throw new IllegalStateException("fintech.node-id must be between 0 and " + MAX_NODE_ID);
+            }
+            nodeId = configuredNodeId;
+        } else if (environment.acceptsProfiles(Profiles.of(DEV_PROFILE))) {
+            nodeId = ManagementFactory.getRuntimeMXBean().getName().hashCode() & MAX_NODE_ID;
+            logger.warn("fintech.node-id not set, derived node id {} from process name", nodeId);
+        } else {
+            // 推导出的节点号可能与其他实例相同，会生成重复的交易ID
+            throw new IllegalStateException("fintech.node-id must be set to a value between 0 and " + MAX_NODE_ID
+                    + " that is unique to this instance (only the " + DEV_PROFILE + " profile derives one)");
+        }
+    }
+
+    public String nextTransactionId() {
+        return "TXN" + String.format("%019d", nextId());
+    }
+
+    public long nextId() {
+        long now = System.currentTimeMillis() - EPOCH;
+        while (true) {
+            long current = state.get();
+            long last = current >>> SEQUENCE_BITS;
+            // 时钟回拨或同一毫秒内：沿用上次的时间继续递增，序号溢出时自然进位到下一毫秒
+            long next = now > last ? now << SEQUENCE_BITS : current + 1;
+            if (state.compareAndSet(current, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+}
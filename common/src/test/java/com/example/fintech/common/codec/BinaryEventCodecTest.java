@@ -0,0 +1,147 @@
+package com.example.fintech.common.codec;
+
+import com.example.fintech.common.event.AccountBalanceEvent;
+import com.example.fintech.common.event.NotificationEvent;
+import com.example.fintech.common.event.PrepareVoteEvent;
+import com.example.fintech.common.event.TransactionEvent;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryEventCodecTest {
+
+    @Test
+    void roundTripsTransactionEvent() {
+        TransactionEvent event = transactionEvent();
+
+        assertEquals(event, roundTrip(event));
+    }
+
+    @Test
+    void roundTripsNullFields() {
+        TransactionEvent event = new TransactionEvent();
+
+        TransactionEvent decoded = (TransactionEvent) roundTrip(event);
+
+        assertEquals(event, decoded);
+        assertNull(decoded.getAmount());
+        assertNull(decoded.getStatus());
+        assertNull(decoded.getTimestamp());
+    }
+
+    @Test
+    void roundTripsAmountsBeyondLongRange() {
+        TransactionEvent event = transactionEvent();
+        event.setAmount(new BigDecimal("123456789012345678901234567890.12"));
+        event.setFromBalanceBefore(new BigDecimal("-98765432109876543210987654321"));
+        // 恰好落在 long 边界两侧
+        event.setToBalanceBefore(new BigDecimal(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), 2));
+
+        assertEquals(event, roundTrip(event));
+
+        event.setToBalanceBefore(new BigDecimal(BigInteger.valueOf(Long.MIN_VALUE), 2));
+        assertEquals(event, roundTrip(event));
+    }
+
+    @Test
+    void keepsNegativeScale() {
+        TransactionEvent event = transactionEvent();
+        event.setAmount(new BigDecimal(BigInteger.valueOf(5), -3));
+
+        TransactionEvent decoded = (TransactionEvent) roundTrip(event);
+
+        assertEquals(-3, decoded.getAmount().scale());
+        assertEquals(event.getAmount(), decoded.getAmount());
+    }
+
+    @Test
+    void keepsStatusStringsOutsideTheEnum() {
+        TransactionEvent event = transactionEvent();
+        // 两阶段提交的中间状态不在 TransactionStatus 里
+        event.setStatus("PREPARED");
+        event.setTransactionType("");
+
+        TransactionEvent decoded = (TransactionEvent) roundTrip(event);
+
+        assertEquals("PREPARED", decoded.getStatus());
+        assertEquals("", decoded.getTransactionType());
+    }
+
+    @Test
+    void keepsTimestampsBeforeTheEpochToTheMicrosecond() {
+        TransactionEvent event = transactionEvent();
+        event.setTimestamp(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_999_000));
+
+        assertEquals(event, roundTrip(event));
+    }
+
+    @Test
+    void roundTripsTheOtherEvents() {
+        LocalDateTime now = LocalDateTime.of(2024, 5, 1, 8, 0, 0, 1_000);
+
+        AccountBalanceEvent balance = new AccountBalanceEvent(
+                "ACC-1", new BigDecimal("10.00"), new BigDecimal("7.50"), "WITHDRAWAL", now);
+        NotificationEvent notification = new NotificationEvent("42", "标题", "余额变动", "ACCOUNT", now);
+        PrepareVoteEvent vote = new PrepareVoteEvent("TX-1", "account-service", true, null, now);
+
+        assertEquals(balance, roundTrip(balance));
+        assertEquals(notification, roundTrip(notification));
+        assertEquals(vote, roundTrip(vote));
+    }
+
+    @Test
+    void v1DecoderIgnoresFieldsAppendedByALaterVersion() {
+        TransactionEvent event = transactionEvent();
+        byte[] v1 = BinaryEventCodec.encode(event);
+
+        // 模拟 v2 写方：版本号改为 2，并在末尾追加一个字符串字段和一个 decimal 字段
+        ByteArrayOutputStream v2 = new ByteArrayOutputStream();
+        v2.write(v1[0]);
+        v2.write(2);
+        v2.write(v1, 2, v1.length - 2);
+        byte[] extra = "added-in-v2".getBytes(StandardCharsets.UTF_8);
+        v2.write(extra.length + 1);
+        v2.write(extra, 0, extra.length);
+        v2.write(1);
+        v2.write(6);
+        v2.write(4);
+
+        assertEquals(event, BinaryEventCodec.decode(v2.toByteArray()));
+    }
+
+    @Test
+    void rejectsTruncatedBodies() {
+        byte[] body = BinaryEventCodec.encode(transactionEvent());
+        byte[] truncated = Arrays.copyOf(body, body.length - 3);
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryEventCodec.decode(truncated));
+    }
+
+    private static Object roundTrip(Object event) {
+        return BinaryEventCodec.decode(BinaryEventCodec.encode(event));
+    }
+
+    private static TransactionEvent transactionEvent() {
+        TransactionEvent event = new TransactionEvent();
+        event.setTransactionId("TX-20240501-0001");
+        event.setFromAccount("ACC-1");
+        event.setToAccount("ACC-2");
+        event.setAmount(new BigDecimal("1234.56"));
+        event.setTransactionType("TRANSFER");
+        event.setStatus("COMPLETED");
+        event.setTimestamp(LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_456_000));
+        event.setDescription("转账");
+        event.setFromBalanceBefore(new BigDecimal("5000.00"));
+        event.setToBalanceBefore(BigDecimal.ZERO);
+        return event;
+    }
+}
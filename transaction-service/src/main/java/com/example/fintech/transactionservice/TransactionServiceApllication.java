@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.context.annotation.Import;
 import com.example.fintech.common.config.RabbitMQConfig;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @SpringBootApplication
@@ -16,9 +17,12 @@ import org.springframework.context.annotation.ComponentScan;
         "com.example.fintech.transactionservice",
         "com.example.fintech.common.service",
         "com.example.fintech.common.config",
-        "com.example.fintech.common.saga"
+        "com.example.fintech.common.saga",
+        "com.example.fintech.common.outbox",
+        "com.example.fintech.common.dedupe"
 })
 @Import(RabbitMQConfig.class)
+@EnableScheduling
 public class TransactionServiceApllication {
     public static void main(String[] args){
         SpringApplication.run(TransactionServiceApllication.class, args);
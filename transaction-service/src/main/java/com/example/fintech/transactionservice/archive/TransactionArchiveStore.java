@@ -0,0 +1,228 @@
+package com.example.fintech.transactionservice.archive;
+
+import com.example.fintech.common.dto.TransactionSummary;
+import com.example.fintech.common.enums.TransactionStatus;
+import com.example.fintech.common.enums.TransactionType;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Cold tier for transactions: transactions_archive, a compressed InnoDB table partitioned by
+ * month on created_at, plus the watermark below which every transaction lives in it.
+ *
+ * The hot transactions table keeps its Hibernate-managed schema; MySQL cannot partition it by
+ * created_at because transaction_id is unique on its own.
+ */
+@Component
+public class TransactionArchiveStore {
+
+    private static final String COLUMNS = "id, transaction_id, from_account_id, to_account_id, amount, type, status, " +
+            "description, created_at, updated_at, from_account_balance_before, from_account_balance_after, " +
+            "to_account_balance_before, to_account_balance_after, aggregated_at";
+
+    private static final String SUMMARY = "SELECT t.id, t.transaction_id, t.type, t.status, t.amount, t.description, " +
+            "fa.account_number AS from_account, ta.account_number AS to_account, t.created_at " +
+            "FROM transactions_archive t " +
+            "LEFT JOIN accounts fa ON fa.id = t.from_account_id " +
+            "LEFT JOIN accounts ta ON ta.id = t.to_account_id ";
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private static final RowMapper<TransactionSummary> SUMMARY_MAPPER = (rs, rowNum) -> new TransactionSummary(
+            rs.getLong("id"),
+            rs.getString("transaction_id"),
+            TransactionType.valueOf(rs.getString("type")),
+            TransactionStatus.valueOf(rs.getString("status")),
+            rs.getBigDecimal("amount"),
+            rs.getString("description"),
+            rs.getString("from_account"),
+            rs.getString("to_account"),
+            rs.getTimestamp("created_at").toLocalDateTime());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @PostConstruct
+    public void createTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS transactions_archive (" +
+                "id BIGINT NOT NULL, " +
+                "transaction_id VARCHAR(255) NOT NULL, " +
+                "from_account_id BIGINT NULL, " +
+                "to_account_id BIGINT NULL, " +
+                "amount DECIMAL(19,4) NOT NULL, " +
+                "type VARCHAR(32) NOT NULL, " +
+                "status VARCHAR(32) NOT NULL, " +
+                "description VARCHAR(500) NULL, " +
+                "created_at DATETIME(6) NOT NULL, " +
+                "updated_at DATETIME(6) NOT NULL, " +
+                "from_account_balance_before DECIMAL(19,4) NULL, " +
+                "from_account_balance_after DECIMAL(19,4) NULL, " +
+                "to_account_balance_before DECIMAL(19,4) NULL, " +
+                "to_account_balance_after DECIMAL(19,4) NULL, " +
+                "aggregated_at DATETIME(6) NULL, " +
+                "PRIMARY KEY (id, created_at), " +
+                "KEY idx_archive_from_created (from_account_id, created_at, id), " +
+                "KEY idx_archive_to_created (to_account_id, created_at, id), " +
+                "KEY idx_archive_transaction_id (transaction_id)" +
+                ") ENGINE=InnoDB ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8 " +
+                "PARTITION BY RANGE COLUMNS(created_at) (PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS transaction_archive_watermark (" +
+                "id TINYINT NOT NULL PRIMARY KEY, " +
+                "archived_before DATETIME(6) NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS transaction_archive_run (" +
+                "id TINYINT NOT NULL PRIMARY KEY, " +
+                "started_at DATETIME(6) NOT NULL, " +
+                "finished_at DATETIME(6) NULL)");
+    }
+
+    /**
+     * True while an archive run is in progress (or was interrupted) or once any row has been
+     * archived. Without a watermark this is the only sign that rows may have left the hot table.
+     */
+    public boolean hasColdRows() {
+        Boolean active = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM transactions_archive) " +
+                        "OR EXISTS (SELECT 1 FROM transaction_archive_run WHERE id = 1 AND finished_at IS NULL)",
+                Boolean.class);
+        return Boolean.TRUE.equals(active);
+    }
+
+    void markRunStarted() {
+        jdbcTemplate.update("INSERT INTO transaction_archive_run (id, started_at, finished_at) VALUES (1, ?, NULL) " +
+                "ON DUPLICATE KEY UPDATE started_at = VALUES(started_at), finished_at = NULL",
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    void markRunFinished() {
+        jdbcTemplate.update("UPDATE transaction_archive_run SET finished_at = ? WHERE id = 1",
+                Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    /**
+     * Every transaction created before the watermark is in the archive. Empty until the first
+     * month has been archived.
+     */
+    public Optional<LocalDateTime> getWatermark() {
+        List<Timestamp> rows = jdbcTemplate.queryForList(
+                "SELECT archived_before FROM transaction_archive_watermark WHERE id = 1", Timestamp.class);
+        return rows.stream().findFirst().map(Timestamp::toLocalDateTime);
+    }
+
+    void advanceWatermark(LocalDateTime archivedBefore) {
+        jdbcTemplate.update("INSERT INTO transaction_archive_watermark (id, archived_before) VALUES (1, ?) " +
+                        "ON DUPLICATE KEY UPDATE archived_before = GREATEST(archived_before, VALUES(archived_before))",
+                Timestamp.valueOf(archivedBefore));
+    }
+
+    /**
+     * Splits the catch-all partition so that the given month gets its own partition. Months must
+     * be added in ascending order.
+     */
+    void ensurePartition(LocalDate monthStart) {
+        String name = PARTITION_NAME.format(monthStart);
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.partitions WHERE table_schema = DATABASE() " +
+                        "AND table_name = 'transactions_archive' AND partition_name = ?", Integer.class, name);
+        if (existing != null && existing > 0) {
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE transactions_archive REORGANIZE PARTITION pmax INTO (" +
+                "PARTITION " + name + " VALUES LESS THAN ('" + monthStart.plusMonths(1).atStartOfDay() + "'), " +
+                "PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+    }
+
+    Optional<LocalDateTime> findOldestHotCreatedAt() {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(
+                "SELECT MIN(created_at) FROM transactions", Timestamp.class)).map(Timestamp::toLocalDateTime);
+    }
+
+    long countHot(LocalDateTime from, LocalDateTime to) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM transactions WHERE created_at >= ? AND created_at < ?", Long.class,
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Moves up to limit settled transactions of [from, to) into the archive. Must run inside a
+     * transaction; the locked rows are copied and deleted atomically.
+     *
+     * A COMPLETED transaction waits for its daily aggregation, unless it was last updated before
+     * aggregationCutoff: such rows predate aggregated_at or lost their event and would otherwise
+     * block the month forever.
+     */
+    int moveChunk(LocalDateTime from, LocalDateTime to, LocalDateTime aggregationCutoff, int limit) {
+        // 未完成或尚未计入日汇总的交易留在热表，等它们处理完再归档
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM transactions WHERE created_at >= ? AND created_at < ? AND status <> 'PENDING' " +
+                        "AND (status <> 'COMPLETED' OR aggregated_at IS NOT NULL OR updated_at < ?) " +
+                        "ORDER BY id LIMIT ? FOR UPDATE",
+                Long.class, Timestamp.valueOf(from), Timestamp.valueOf(to), Timestamp.valueOf(aggregationCutoff),
+                limit);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", ids);
+        namedJdbcTemplate.update("INSERT INTO transactions_archive (" + COLUMNS + ") " +
+                "SELECT " + COLUMNS + " FROM transactions WHERE id IN (:ids)", params);
+        namedJdbcTemplate.update("DELETE FROM transactions WHERE id IN (:ids)", params);
+        return ids.size();
+    }
+
+    public Optional<TransactionStatus> findStatusByTransactionId(String transactionId) {
+        return jdbcTemplate.queryForList("SELECT status FROM transactions_archive WHERE transaction_id = ?",
+                        String.class, transactionId)
+                .stream().findFirst().map(TransactionStatus::valueOf);
+    }
+
+    public List<TransactionSummary> findByAccountIdAndDateRange(Long accountId, LocalDateTime start, LocalDateTime end) {
+        return namedJdbcTemplate.query(SUMMARY +
+                        "WHERE (t.from_account_id = :accountId OR t.to_account_id = :accountId) " +
+                        "AND t.created_at BETWEEN :start AND :end ORDER BY t.created_at DESC, t.id DESC",
+                new MapSqlParameterSource()
+                        .addValue("accountId", accountId)
+                        .addValue("start", Timestamp.valueOf(start))
+                        .addValue("end", Timestamp.valueOf(end)),
+                SUMMARY_MAPPER);
+    }
+
+    public List<TransactionSummary> findByAccountIdAndType(Long accountId, TransactionType type) {
+        return namedJdbcTemplate.query(SUMMARY +
+                        "WHERE (t.from_account_id = :accountId OR t.to_account_id = :accountId) " +
+                        "AND t.type = :type ORDER BY t.created_at DESC, t.id DESC",
+                new MapSqlParameterSource()
+                        .addValue("accountId", accountId)
+                        .addValue("type", type.name()),
+                SUMMARY_MAPPER);
+    }
+
+    public List<TransactionSummary> findByAccountIdBefore(Long accountId, LocalDateTime createdAt, long id, int limit) {
+        String seek = "AND (t.created_at < :createdAt OR (t.created_at = :createdAt AND t.id < :id)) " +
+                "ORDER BY t.created_at DESC, t.id DESC LIMIT :limit";
+        return namedJdbcTemplate.query(
+                "SELECT * FROM ((" + SUMMARY + "WHERE t.from_account_id = :accountId " + seek + ") " +
+                        "UNION (" + SUMMARY + "WHERE t.to_account_id = :accountId " + seek + ")) u " +
+                        "ORDER BY created_at DESC, id DESC LIMIT :limit",
+                new MapSqlParameterSource()
+                        .addValue("accountId", accountId)
+                        .addValue("createdAt", Timestamp.valueOf(createdAt))
+                        .addValue("id", id)
+                        .addValue("limit", limit),
+                SUMMARY_MAPPER);
+    }
+}
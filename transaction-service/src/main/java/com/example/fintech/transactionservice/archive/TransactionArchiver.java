@@ -0,0 +1,118 @@
+package com.example.fintech.transactionservice.archive;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Optional;
+
+/**
+ * Moves closed months from the hot transactions table into the archive, oldest month first,
+ * in small chunks. The watermark only advances once a month is completely moved.
+ */
+@Component
+public class TransactionArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionArchiver.class);
+
+    @Autowired
+    private TransactionArchiveStore archiveStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // 热表保留的完整月份数（不含当月）
+    @Value("${transaction.archive.hot-months:3}")
+    private int hotMonths;
+
+    @Value("${transaction.archive.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${transaction.archive.enabled:true}")
+    private boolean enabled;
+
+    // 完成后超过该天数仍未计入日汇总的交易（早于 aggregated_at 的旧数据）不再阻塞归档
+    @Value("${transaction.archive.aggregation-grace-days:7}")
+    private int aggregationGraceDays;
+
+    // 标记归档开始后等待的时间，让此前按"只读热表"路由的查询先结束
+    @Value("${transaction.archive.start-grace-ms:5000}")
+    private long startGraceMillis;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${transaction.archive.cron:0 30 2 * * *}")
+    public void archiveClosedMonths() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime target = YearMonth.now().minusMonths(hotMonths).atDay(1).atStartOfDay();
+
+        Optional<LocalDateTime> next = nextMonthToArchive();
+        if (next.isEmpty() || !next.get().isBefore(target)) {
+            return;
+        }
+
+        archiveStore.markRunStarted();
+        try {
+            Thread.sleep(startGraceMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        LocalDateTime aggregationCutoff = LocalDateTime.now().minusDays(aggregationGraceDays);
+        while (next.isPresent() && next.get().isBefore(target)) {
+            LocalDateTime monthStart = next.get();
+            if (!archiveMonth(monthStart, aggregationCutoff)) {
+                logger.info("Archiving stopped at {}: unsettled transactions remain", YearMonth.from(monthStart));
+                break;
+            }
+            next = Optional.of(monthStart.plusMonths(1));
+        }
+        // 中途异常时保持"进行中"，路由继续读两层，直到下一次成功运行
+        archiveStore.markRunFinished();
+    }
+
+    private Optional<LocalDateTime> nextMonthToArchive() {
+        Optional<LocalDateTime> watermark = archiveStore.getWatermark();
+        if (watermark.isPresent()) {
+            return watermark;
+        }
+        return archiveStore.findOldestHotCreatedAt()
+                .map(oldest -> YearMonth.from(oldest).atDay(1).atStartOfDay());
+    }
+
+    private boolean archiveMonth(LocalDateTime monthStart, LocalDateTime aggregationCutoff) {
+        LocalDateTime monthEnd = monthStart.plusMonths(1);
+        archiveStore.ensurePartition(LocalDate.from(monthStart));
+
+        long moved = 0;
+        int chunk;
+        do {
+            chunk = transactionTemplate.execute(status -> archiveStore.moveChunk(monthStart, monthEnd, aggregationCutoff, chunkSize));
+            moved += chunk;
+        } while (chunk == chunkSize);
+
+        if (archiveStore.countHot(monthStart, monthEnd) > 0) {
+            return false;
+        }
+        archiveStore.advanceWatermark(monthEnd);
+        logger.info("Archived {} transactions of {}", moved, YearMonth.from(monthStart));
+        return true;
+    }
+}
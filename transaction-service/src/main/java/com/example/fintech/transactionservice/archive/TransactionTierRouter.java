@@ -0,0 +1,48 @@
+package com.example.fintech.transactionservice.archive;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Decides which tier a time range has to read. Everything before the archive watermark is
+ * cold; the month right after it may be half-moved while the archiver runs, so ranges touching
+ * it read both tiers. Before the first watermark is written, everything reads both tiers as soon
+ * as an archive run has started.
+ */
+@Component
+public class TransactionTierRouter {
+
+    public enum Tier { HOT, COLD, BOTH }
+
+    @Autowired
+    private TransactionArchiveStore archiveStore;
+
+    public Tier route(LocalDateTime start, LocalDateTime end) {
+        Optional<LocalDateTime> watermark = archiveStore.getWatermark();
+        if (watermark.isEmpty()) {
+            // 第一个月搬迁期间水位线尚未写入，已提交的分块只在冷表中
+            return archiveStore.hasColdRows() ? Tier.BOTH : Tier.HOT;
+        }
+        return route(start, end, watermark.get());
+    }
+
+    static Tier route(LocalDateTime start, LocalDateTime end, LocalDateTime watermark) {
+        if (end != null && end.isBefore(watermark)) {
+            return Tier.COLD;
+        }
+        if (start != null && !start.isBefore(hotFrontier(watermark))) {
+            return Tier.HOT;
+        }
+        return Tier.BOTH;
+    }
+
+    /**
+     * Earliest time from which rows are guaranteed to be in the hot table only.
+     */
+    public static LocalDateTime hotFrontier(LocalDateTime watermark) {
+        return watermark.plusMonths(1);
+    }
+}
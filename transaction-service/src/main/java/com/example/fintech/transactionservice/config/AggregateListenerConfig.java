@@ -0,0 +1,35 @@
+package com.example.fintech.transactionservice.config;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AggregateListenerConfig {
+
+    @Value("${transaction.aggregate.batch-size:200}")
+    private int batchSize;
+
+    @Value("${transaction.aggregate.receive-timeout-ms:500}")
+    private long receiveTimeoutMillis;
+
+    // 消费端攒批：凑满 batch-size 或等待 receive-timeout 后把整批交给监听方法
+    @Bean
+    public SimpleRabbitListenerContainerFactory aggregateListenerContainerFactory(
+            ConnectionFactory connectionFactory, MessageConverter messageConverter) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(batchSize);
+        factory.setReceiveTimeout(receiveTimeoutMillis);
+        return factory;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.fintech.transactionservice.config;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Batch consumers for the transaction and balance queues. Listeners receive the raw messages of a
+ * batch and settle them through {@link com.example.fintech.transactionservice.listener.BatchAcknowledger}.
+ */
+@Configuration
+public class BatchListenerConfig {
+
+    @Value("${transaction.listener.transaction-queue.prefetch:250}")
+    private int transactionPrefetch;
+
+    @Value("${transaction.listener.transaction-queue.batch-size:100}")
+    private int transactionBatchSize;
+
+    @Value("${transaction.listener.transaction-queue.receive-timeout-ms:200}")
+    private long transactionReceiveTimeoutMillis;
+
+    @Value("${transaction.listener.transaction-queue.concurrency:1}")
+    private int transactionConcurrency;
+
+    @Value("${transaction.listener.transaction-queue.max-concurrency:4}")
+    private int transactionMaxConcurrency;
+
+    @Value("${transaction.listener.balance-queue.prefetch:250}")
+    private int balancePrefetch;
+
+    @Value("${transaction.listener.balance-queue.batch-size:100}")
+    private int balanceBatchSize;
+
+    @Value("${transaction.listener.balance-queue.receive-timeout-ms:200}")
+    private long balanceReceiveTimeoutMillis;
+
+    @Value("${transaction.listener.balance-queue.concurrency:1}")
+    private int balanceConcurrency;
+
+    @Value("${transaction.listener.balance-queue.max-concurrency:4}")
+    private int balanceMaxConcurrency;
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory transactionBatchListenerContainerFactory(ConnectionFactory connectionFactory) {
+        return batchFactory(connectionFactory, transactionPrefetch, transactionBatchSize,
+                transactionReceiveTimeoutMillis, transactionConcurrency, transactionMaxConcurrency);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory balanceBatchListenerContainerFactory(ConnectionFactory connectionFactory) {
+        return batchFactory(connectionFactory, balancePrefetch, balanceBatchSize,
+                balanceReceiveTimeoutMillis, balanceConcurrency, balanceMaxConcurrency);
+    }
+
+    // 手动确认：整批处理完后一次 multiple ack，失败的消息单独 nack
+    private SimpleRabbitListenerContainerFactory batchFactory(ConnectionFactory connectionFactory, int prefetch,
+                                                              int batchSize, long receiveTimeoutMillis,
+                                                              int concurrency, int maxConcurrency) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        // prefetch 小于批量时批次永远凑不满，只能等超时
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setReceiveTimeout(receiveTimeoutMillis);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        return factory;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.fintech.transactionservice.config;
+
+import com.example.fintech.transactionservice.timer.HashedWheelTimer;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Queue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class DistributedTransactionConfig {
+
+    @Value("${dtx.timer.tick-ms:100}")
+    private long tickMillis;
+
+    @Value("${dtx.timer.wheel-size:512}")
+    private int wheelSize;
+
+    @Value("${dtx.worker-threads:8}")
+    private int workerThreads;
+
+    // 每个协调者实例独占的投票回复队列，实例退出后自动删除
+    @Bean
+    public Queue dtxReplyQueue() {
+        return new AnonymousQueue();
+    }
+
+    // 超时回调、日志落盘后的消息发送和恢复都在这里执行，它们可能阻塞，不能占用时间轮或日志写线程
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService dtxExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread thread = new Thread(r, "dtx-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Bean(destroyMethod = "stop")
+    public HashedWheelTimer dtxTimeoutTimer() {
+        return new HashedWheelTimer("dtx-timer", tickMillis, TimeUnit.MILLISECONDS, wheelSize, dtxExecutor());
+    }
+}
@@ -2,6 +2,7 @@ package com.example.fintech.transactionservice.config;
 
 import com.example.fintech.common.config.BaseSecurityConfig;
 import com.example.fintech.transactionservice.filter.UserContextFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -23,6 +24,8 @@ public class SecurityConfig extends BaseSecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         // Public endpoints first - highest priority
                         .requestMatchers(getPublicEndpoints()).permitAll()
+                        // Async dispatch of an already authorized request
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // Test endpoints - allow without authentication
                         .requestMatchers("/api/test/**").permitAll()
                         // All other requests require authentication
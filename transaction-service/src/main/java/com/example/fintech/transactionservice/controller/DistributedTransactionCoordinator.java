@@ -2,108 +2,310 @@ package com.example.fintech.transactionservice.controller;
 
 import com.example.fintech.common.entity.DistributedTransaction;
 import com.example.fintech.common.enums.DistributedTransactionStatus;
+import com.example.fintech.common.event.PrepareVoteEvent;
 import com.example.fintech.common.event.TransactionEvent;
 import com.example.fintech.common.service.EventPublisher;
+import com.example.fintech.transactionservice.dtx.DistributedTransactionLog;
+import com.example.fintech.transactionservice.timer.HashedWheelTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.Locale;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
-
+/**
+ * Two-phase commit coordinator.
+ *
+ * Prepare requests go out on the transaction exchange with this instance's reply queue as
+ * replyTo. Votes are correlated by transaction id to pending entries; the first NO vote, the
+ * last YES vote or the prepare timeout decides, and nothing blocks while waiting.
+ *
+ * Deadlines live on a hashed timing wheel: a PREPARING deadline aborts the transaction, a
+ * COMMITTING deadline re-publishes a commit decision that could not be delivered.
+ *
+ * Every transition is written to DistributedTransactionLog. PREPARING and COMMITTING must be
+ * durable before the matching message goes out, so a restarted coordinator can re-drive
+ * in-doubt transactions: undecided ones are aborted, decided ones have their decision re-sent.
+ */
 @Service
 public class DistributedTransactionCoordinator {
 
     private static final Logger logger = LoggerFactory.getLogger(DistributedTransactionCoordinator.class);
-    private static final int TIMEOUT_SECONDS = 30;
 
     @Autowired
     private EventPublisher eventPublisher;
 
-    public String initiateDistributedTransfer(String fromAccount,  String toAccount, BigDecimal amount) {
+    @Autowired
+    @Qualifier("dtxReplyQueue")
+    private Queue replyQueue;
+
+    @Autowired
+    private HashedWheelTimer dtxTimeoutTimer;
+
+    @Autowired
+    private DistributedTransactionLog transactionLog;
+
+    @Autowired
+    @Qualifier("dtxExecutor")
+    private ExecutorService dtxExecutor;
+
+    @Value("${dtx.prepare-timeout-seconds:30}")
+    private long prepareTimeoutSeconds;
+
+    @Value("${dtx.commit-retry-seconds:5}")
+    private long commitRetrySeconds;
+
+    // 只恢复超过该时长未更新的事务，避免接管其他实例正在处理的事务
+    @Value("${dtx.recovery.stale-seconds:60}")
+    private long recoveryStaleSeconds;
+
+    // 需要投票的参与者，逗号分隔
+    @Value("${dtx.participants:account-service}")
+    private String participants;
+
+    private final Map<String, PendingTransaction> pending = new ConcurrentHashMap<>();
+
+    // 已决定提交但提交消息尚未发出的事务
+    private final Map<String, DistributedTransaction> committing = new ConcurrentHashMap<>();
+
+    private static class PendingTransaction {
+        final DistributedTransaction dtx;
+        final Set<String> awaitingVotes;
+        final CompletableFuture<DistributedTransaction> outcome = new CompletableFuture<>();
+        volatile HashedWheelTimer.Timeout deadline;
+
+        PendingTransaction(DistributedTransaction dtx, Set<String> awaitingVotes) {
+            this.dtx = dtx;
+            this.awaitingVotes = awaitingVotes;
+        }
+    }
+
+    /**
+     * Starts a distributed transfer. The future completes with the transaction once the commit
+     * or abort decision has been published; its status tells which.
+     */
+    public CompletableFuture<DistributedTransaction> initiateDistributedTransfer(String fromAccount, String toAccount,
+                                                                               BigDecimal amount) {
         String transactionId = generateTransactionId();
+        logger.info("initiating distributed transaction : {}", transactionId);
 
-        try {
-            //phase 1: prepare
-            logger.info("initiating distributed transaction : {}", transactionId);
+        DistributedTransaction dtx = createDistributedTransaction(transactionId, fromAccount, toAccount, amount);
+        transactionLog.append(dtx);
+
+        Set<String> awaiting = ConcurrentHashMap.newKeySet();
+        Arrays.stream(participants.split(",")).map(String::trim).filter(s -> !s.isEmpty()).forEach(awaiting::add);
+        PendingTransaction transaction = new PendingTransaction(dtx, awaiting);
+        pending.put(transactionId, transaction);
+        // 先挂上截止时间再发送准备消息，投票再快也能取消到它
+        transaction.deadline = dtxTimeoutTimer.schedule(
+                () -> onPrepareTimeout(transactionId), prepareTimeoutSeconds, TimeUnit.SECONDS);
+
+        transition(dtx, DistributedTransactionStatus.PREPARING).whenCompleteAsync((ignored, logError) -> {
+            if (logError != null) {
+                logger.error("Could not log PREPARING for transaction: {}", transactionId, logError);
+                decide(transaction, false, "Prepare could not be logged");
+                return;
+            }
+            // 写日志期间可能已经超时中止
+            if (pending.get(transactionId) != transaction) {
+                return;
+            }
+            try {
+                eventPublisher.publishPrepareEvent(createPrepareEvent(dtx), replyQueue.getName());
+            } catch (Exception e) {
+                logger.error("Prepare phase failed for transaction: {}", transactionId, e);
+                decide(transaction, false, "Prepare could not be published");
+            }
+        }, dtxExecutor);
+
+        return transaction.outcome;
+    }
+
+    @RabbitListener(queues = "#{dtxReplyQueue.name}", ackMode = "AUTO")
+    public void onPrepareVote(PrepareVoteEvent vote) {
+        PendingTransaction transaction = pending.get(vote.getTransactionId());
+        if (transaction == null) {
+            logger.warn("Ignoring vote for unknown or already decided transaction: {}", vote.getTransactionId());
+            return;
+        }
+
+        if (!vote.isPrepared()) {
+            decide(transaction, false, vote.getParticipant() + " voted no: " + vote.getReason());
+            return;
+        }
+
+        transaction.awaitingVotes.remove(vote.getParticipant());
+        if (transaction.awaitingVotes.isEmpty()) {
+            decide(transaction, true, null);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("preparing", pending.size());
+        metrics.put("committing", committing.size());
+        metrics.put("scheduledDeadlines", dtxTimeoutTimer.pendingTimeouts());
+        metrics.put("logBatches", transactionLog.getBatches());
+        metrics.put("logRecords", transactionLog.getRecords());
+        return metrics;
+    }
 
-            DistributedTransaction dtx = createDistributedTransaction(transactionId, fromAccount, toAccount, amount);
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOnStartup() {
+        recoverInDoubtTransactions();
+    }
 
-            // Send prepare messages to participants
-            CompletableFuture<Boolean> prepareResult = sendPreparePhase(dtx);
+    /**
+     * Re-drives transactions left in doubt by a crashed coordinator, or whose decision could not
+     * be delivered, in parallel on the coordinator executor. Runs periodically so transactions of
+     * an instance that crashed while this one was running are picked up too. Transactions without
+     * a logged commit decision are aborted.
+     */
+    @Scheduled(fixedDelayString = "${dtx.recovery.interval-ms:30000}",
+            initialDelayString = "${dtx.recovery.interval-ms:30000}")
+    public void recoverInDoubtTransactions() {
+        List<DistributedTransaction> inDoubt;
+        try {
+            inDoubt = transactionLog.claimInDoubt(LocalDateTime.now().minusSeconds(recoveryStaleSeconds));
+        } catch (Exception e) {
+            logger.error("Distributed transaction recovery scan failed", e);
+            return;
+        }
+        if (inDoubt.isEmpty()) {
+            return;
+        }
 
-            // Wait for prepare responses with timeout
-            Boolean prepared = prepareResult.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        logger.warn("Recovering {} in-doubt distributed transactions", inDoubt.size());
+        CompletableFuture<?>[] recoveries = inDoubt.stream()
+                .map(dtx -> CompletableFuture.runAsync(() -> redrive(dtx), dtxExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(recoveries).whenComplete((ignored, e) ->
+                logger.info("Finished re-driving {} distributed transactions", recoveries.length));
+    }
 
-            if (prepared){
-                return commitPhase(dtx);
+    private void redrive(DistributedTransaction dtx) {
+        // 本实例仍在处理（等待投票或定时重发提交）的事务不重复推进
+        if (pending.containsKey(dtx.getTransactionId()) || committing.containsKey(dtx.getTransactionId())) {
+            return;
+        }
+        try {
+            if (dtx.getStatus() == DistributedTransactionStatus.COMMITTING) {
+                committing.put(dtx.getTransactionId(), dtx);
+                publishCommit(dtx);
             } else {
-                return abortPhase(dtx);
+                abortPhase(dtx, dtx.getStatus() == DistributedTransactionStatus.ABORTING
+                        ? dtx.getMetadata() : "Coordinator restarted before a decision");
             }
         } catch (Exception e) {
-            logger.error("distributed transaction failed : {}", transactionId, e);
-            //handle timeout or failure
-            abortTransaction(transactionId);
-            throw new RuntimeException("distributed transaction failed", e);
+            logger.error("Failed to re-drive distributed transaction {}", dtx.getTransactionId(), e);
         }
     }
 
-    private CompletableFuture<Boolean> sendPreparePhase(DistributedTransaction dtx) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                //send prepare event
-                TransactionEvent prepareEvent = createPrepareEvent(dtx);
-                eventPublisher.publishTransactionEvent(prepareEvent);
+    private void onPrepareTimeout(String transactionId) {
+        PendingTransaction transaction = pending.get(transactionId);
+        if (transaction != null) {
+            logger.warn("Aborting transaction due to timeout : {} ", transactionId);
+            decide(transaction, false, "Prepare timed out");
+        }
+    }
 
-                //simulate participant responses
-                Thread.sleep(1000);
+    private void decide(PendingTransaction transaction, boolean commit, String reason) {
+        // 投票、超时可能并发到达，只有先从 pending 中移除的一方做出决定
+        if (!pending.remove(transaction.dtx.getTransactionId(), transaction)) {
+            return;
+        }
 
-                //for demo purpose, assume success
-                return true;
+        HashedWheelTimer.Timeout deadline = transaction.deadline;
+        if (deadline != null) {
+            deadline.cancel();
+        }
 
-            } catch (Exception e) {
-                logger.error("Prepare phase failed for transaction: {}", dtx.getTransactionId(), e);
-                return false;
-            }
-        });
+        DistributedTransaction dtx = transaction.dtx;
+        if (commit) {
+            transition(dtx, DistributedTransactionStatus.PREPARED);
+            commitPhase(transaction);
+        } else {
+            abortPhase(dtx, reason);
+            transaction.outcome.complete(dtx);
+        }
     }
 
-    private String commitPhase(DistributedTransaction dtx) {
+    private void commitPhase(PendingTransaction transaction) {
+        DistributedTransaction dtx = transaction.dtx;
         logger.info("committing distributed transaction : {}", dtx.getTransactionId());
 
-        dtx.setStatus(DistributedTransactionStatus.COMMITTING);
-
-        // Send commit event
-        TransactionEvent commitEvent = createCommitEvent(dtx);
-        eventPublisher.publishTransactionEvent(commitEvent);
-
-        dtx.setStatus(DistributedTransactionStatus.COMMITTED);
-        return dtx.getTransactionId();
+        committing.put(dtx.getTransactionId(), dtx);
+        // 提交决定落盘后才能通知参与者，否则协调者崩溃后无法得知已决定提交
+        transition(dtx, DistributedTransactionStatus.COMMITTING).whenCompleteAsync((ignored, logError) -> {
+            if (logError != null) {
+                logger.error("Could not log commit decision for {}, aborting", dtx.getTransactionId(), logError);
+                committing.remove(dtx.getTransactionId());
+                abortPhase(dtx, "Commit decision could not be logged");
+            } else {
+                publishCommit(dtx);
+            }
+            transaction.outcome.complete(dtx);
+        }, dtxExecutor);
     }
 
-    private String abortPhase(DistributedTransaction dtx) {
-        logger.info("aborting distributed transaction: {}", dtx.getTransactionId());
+    // 提交一旦决定就不能回退，发送失败时由时间轮定时重发，直到参与者收到为止
+    private void publishCommit(DistributedTransaction dtx) {
+        try {
+            eventPublisher.publishDecisionEvent(createCommitEvent(dtx));
+            committing.remove(dtx.getTransactionId());
+            transition(dtx, DistributedTransactionStatus.COMMITTED);
+        } catch (Exception e) {
+            logger.error("Commit decision for {} not delivered, retrying in {}s",
+                    dtx.getTransactionId(), commitRetrySeconds, e);
+            dtxTimeoutTimer.schedule(() -> publishCommit(dtx), commitRetrySeconds, TimeUnit.SECONDS);
+        }
+    }
 
-        dtx.setStatus(DistributedTransactionStatus.ABORTING);
+    private void abortPhase(DistributedTransaction dtx, String reason) {
+        logger.info("aborting distributed transaction: {} ({})", dtx.getTransactionId(), reason);
 
+        dtx.setMetadata(reason);
+        transition(dtx, DistributedTransactionStatus.ABORTING);
 
         //send abort event
-        TransactionEvent abortEvent = createAbortEvent(dtx);
-        eventPublisher.publishTransactionEvent(abortEvent);
+        try {
+            eventPublisher.publishDecisionEvent(createAbortEvent(dtx));
+        } catch (Exception e) {
+            // 参与者的冻结不会过期：保持 ABORTING，由定时恢复重发中止消息
+            logger.warn("Abort decision for {} not delivered, recovery will resend it", dtx.getTransactionId(), e);
+            return;
+        }
 
-        dtx.setStatus(DistributedTransactionStatus.ABORTED);
-        return dtx.getTransactionId();
+        transition(dtx, DistributedTransactionStatus.ABORTED);
     }
 
-    private void abortTransaction(String transactionId) {
-        logger.warn("Aborting transaction due to timeout : {} ", transactionId);
-        //clean up
+    // 非关键转换不等待落盘；丢失时恢复流程会把事务再推进一次，参与者处理是幂等的
+    private CompletableFuture<Void> transition(DistributedTransaction dtx, DistributedTransactionStatus status) {
+        dtx.setStatus(status);
+        return transactionLog.append(dtx).whenComplete((ignored, e) -> {
+            if (e != null) {
+                logger.warn("Failed to log {} for distributed transaction {}", status, dtx.getTransactionId());
+            }
+        });
     }
 
     private DistributedTransaction createDistributedTransaction(String transactionId,
@@ -129,9 +331,13 @@ public class DistributedTransactionCoordinator {
         return event;
     }
 
+    // 决定消息携带完整的转账信息，参与者提交时无需额外查询
     private TransactionEvent createCommitEvent(DistributedTransaction dtx) {
         TransactionEvent event = new TransactionEvent();
         event.setTransactionId(dtx.getTransactionId());
+        event.setFromAccount(dtx.getFromAccountNumber());
+        event.setToAccount(dtx.getToAccountNumber());
+        event.setAmount(dtx.getAmount());
         event.setTransactionType("DISTRIBUTED_TRANSFER_COMMIT");
         event.setStatus("COMMITTING");
         event.setTimestamp(LocalDateTime.now());
@@ -141,13 +347,17 @@ public class DistributedTransactionCoordinator {
     private TransactionEvent createAbortEvent(DistributedTransaction dtx) {
         TransactionEvent event = new TransactionEvent();
         event.setTransactionId(dtx.getTransactionId());
+        event.setFromAccount(dtx.getFromAccountNumber());
+        event.setToAccount(dtx.getToAccountNumber());
+        event.setAmount(dtx.getAmount());
         event.setTransactionType("DISTRIBUTED_TRANSFER_ABORT");
         event.setStatus("ABORTING");
+        event.setDescription(dtx.getMetadata());
         event.setTimestamp(LocalDateTime.now());
         return event;
     }
 
     private String generateTransactionId() {
-        return "DTX-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        return "DTX-" + UUID.randomUUID().toString().toUpperCase();
     }
 }
@@ -1,28 +1,134 @@
 package com.example.fintech.transactionservice.controller;
 
+import com.example.fintech.common.dto.TransactionSummary;
+import com.example.fintech.common.dto.TransferRequest;
 import com.example.fintech.common.entity.Transaction;
+import com.example.fintech.common.enums.DistributedTransactionStatus;
+import com.example.fintech.common.enums.TransactionStatus;
 import com.example.fintech.common.enums.TransactionType;
+import com.example.fintech.common.dedupe.MessageDeduplicator;
+import com.example.fintech.common.outbox.OutboxRelay;
+import com.example.fintech.common.service.EventPublisher;
+import com.example.fintech.transactionservice.service.DailyAggregateService;
+import com.example.fintech.transactionservice.service.TransactionCompletionPipeline;
+import com.example.fintech.transactionservice.service.TransactionExportService;
 import com.example.fintech.transactionservice.service.TransactionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionController {
 
+    private static final int MAX_CURSOR_PAGE_SIZE = 200;
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private DistributedTransactionCoordinator distributedTransactionCoordinator;
+
+    @Autowired
+    private TransactionCompletionPipeline transactionCompletionPipeline;
+
+    @Autowired
+    private TransactionExportService transactionExportService;
+
+    @Autowired
+    private DailyAggregateService dailyAggregateService;
+
+    @Autowired
+    private EventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private OutboxRelay outboxRelay;
+
+    @Autowired(required = false)
+    private MessageDeduplicator messageDeduplicator;
+
+    @GetMapping("/completion/metrics")
+    public ResponseEntity<?> completionMetrics() {
+        return ResponseEntity.ok(transactionCompletionPipeline.getMetrics());
+    }
+
+    @GetMapping("/publisher/metrics")
+    public ResponseEntity<?> publisherMetrics() {
+        return ResponseEntity.ok(eventPublisher.getMetrics());
+    }
+
+    @GetMapping("/outbox/metrics")
+    public ResponseEntity<?> outboxMetrics() {
+        if (outboxRelay == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(outboxRelay.getMetrics());
+    }
+
+    @GetMapping("/dedupe/metrics")
+    public ResponseEntity<?> dedupeMetrics() {
+        if (messageDeduplicator == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(messageDeduplicator.getMetrics());
+    }
+
+    @GetMapping("/distributed/metrics")
+    public ResponseEntity<?> distributedMetrics() {
+        return ResponseEntity.ok(distributedTransactionCoordinator.getMetrics());
+    }
+
+    @PostMapping("/distributed/transfer")
+    public CompletableFuture<ResponseEntity<?>> distributedTransfer(@RequestBody TransferRequest request) {
+        return distributedTransactionCoordinator.initiateDistributedTransfer(
+                        request.getFromAccount(),
+                        request.getToAccount(),
+                        request.getAmount()
+                )
+                .<ResponseEntity<?>>thenApply(dtx -> {
+                    if (dtx.getStatus() == DistributedTransactionStatus.COMMITTED) {
+                        return ResponseEntity.ok(Map.of(
+                                "transactionId", dtx.getTransactionId(),
+                                "status", dtx.getStatus()
+                        ));
+                    }
+                    // 已决定提交，提交消息仍在重发
+                    if (dtx.getStatus() == DistributedTransactionStatus.COMMITTING) {
+                        return ResponseEntity.accepted().body(Map.of(
+                                "transactionId", dtx.getTransactionId(),
+                                "status", dtx.getStatus()
+                        ));
+                    }
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                            "transactionId", dtx.getTransactionId(),
+                            "status", dtx.getStatus(),
+                            "reason", String.valueOf(dtx.getMetadata())
+                    ));
+                })
+                .exceptionally(e -> ResponseEntity.internalServerError()
+                        .body("Distributed transfer failed: " + e.getMessage()));
+    }
+
     @PostMapping("/create")
     public ResponseEntity<?> createTransaction(@RequestBody Map<String, Object> transactionData) {
         try {
@@ -40,6 +146,10 @@ public class TransactionController {
             Transaction transaction = transactionService.createTransaction(
                     fromAccountId, toAccountId, amount, type, description);
 
+            // 异步完成模式下交易仍为 PENDING，客户端通过状态接口查询最终结果
+            if (transaction.getStatus() == TransactionStatus.PENDING) {
+                return ResponseEntity.accepted().body(transaction);
+            }
             return ResponseEntity.ok(transaction);
         } catch (Exception e) {
             System.err.println("Error creating transaction: " + e.getMessage());
@@ -54,7 +164,7 @@ public class TransactionController {
             @RequestParam(value = "size", defaultValue = "10") int size) {
         try {
             System.out.println("Transaction Service - Getting history for accountId: " + accountId + ", page: " + page + ", size: " + size);
-            Page<Transaction> transactions = transactionService.getTransactionsByAccountId(
+            Page<TransactionSummary> transactions = transactionService.getTransactionsByAccountId(
                     accountId, PageRequest.of(page, size));
             return ResponseEntity.ok(transactions);
         } catch (Exception e) {
@@ -63,13 +173,93 @@ public class TransactionController {
         }
     }
 
+    // 游标分页：按 (createdAt, id) 定位，不做 COUNT，翻到多深延迟都一样
+    @GetMapping("/history/cursor")
+    public ResponseEntity<?> getTransactionHistoryByCursor(
+            @RequestParam("accountId") Long accountId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size) {
+        try {
+            if (size < 1 || size > MAX_CURSOR_PAGE_SIZE) {
+                return ResponseEntity.badRequest().body("size must be between 1 and " + MAX_CURSOR_PAGE_SIZE);
+            }
+            return ResponseEntity.ok(transactionService.getTransactionsByAccountId(accountId, cursor, size));
+        } catch (Exception e) {
+            System.err.println("Error getting transaction history: " + e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // 流式导出：逐行从数据库读出并写入响应，内存占用与行数无关
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @RequestParam("accountId") Long accountId,
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate,
+            @RequestParam(value = "type", required = false) TransactionType type,
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        TransactionExportService.Format exportFormat = TransactionExportService.Format.valueOf(format.toUpperCase());
+        LocalDateTime start = startDate != null ? LocalDate.parse(startDate).atStartOfDay() : null;
+        LocalDateTime end = endDate != null ? LocalDate.parse(endDate).atTime(23, 59, 59) : null;
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, EXPORT_BUFFER_SIZE) : out;
+            OutputStream buffered = new BufferedOutputStream(target, EXPORT_BUFFER_SIZE);
+            transactionExportService.export(accountId, start, end, type, exportFormat, buffered);
+            buffered.flush();
+            if (target instanceof GZIPOutputStream gzipStream) {
+                gzipStream.finish();
+            }
+        };
+
+        String extension = exportFormat == TransactionExportService.Format.CSV ? "csv" : "ndjson";
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(exportFormat == TransactionExportService.Format.CSV
+                        ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"transactions-" + accountId + "." + extension + "\"")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    @GetMapping("/summary/monthly")
+    public ResponseEntity<?> getMonthlySummary(
+            @RequestParam("accountNumber") String accountNumber,
+            @RequestParam("year") int year,
+            @RequestParam("month") int month) {
+        try {
+            YearMonth period = YearMonth.of(year, month);
+            return ResponseEntity.ok(dailyAggregateService.summarize(
+                    accountNumber, period.atDay(1), period.atEndOfMonth()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/summary/yearly")
+    public ResponseEntity<?> getYearlySummary(
+            @RequestParam("accountNumber") String accountNumber,
+            @RequestParam("year") int year) {
+        try {
+            return ResponseEntity.ok(dailyAggregateService.summarizeYear(accountNumber, year));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/history/type/{type}")
     public ResponseEntity<?> getTransactionsByType(
             @RequestParam("accountId") Long accountId,
             @PathVariable("type") TransactionType type) {
         try {
             System.out.println("Transaction Service - Getting transactions by type: " + type + " for accountId: " + accountId);
-            List<Transaction> transactions = transactionService.getTransactionsByAccountAndType(
+            List<TransactionSummary> transactions = transactionService.getTransactionsByAccountAndType(
                     accountId, type);
             return ResponseEntity.ok(transactions);
         } catch (Exception e) {
@@ -89,7 +279,7 @@ public class TransactionController {
             LocalDateTime start = LocalDate.parse(startDate, formatter).atStartOfDay();
             LocalDateTime end = LocalDate.parse(endDate, formatter).atTime(23, 59, 59);
 
-            List<Transaction> transactions = transactionService.getTransactionsByDateRange(
+            List<TransactionSummary> transactions = transactionService.getTransactionsByDateRange(
                     accountId, start, end);
             return ResponseEntity.ok(transactions);
         } catch (Exception e) {
@@ -98,6 +288,18 @@ public class TransactionController {
         }
     }
 
+    @GetMapping("/{transactionId}/status")
+    public ResponseEntity<?> getTransactionStatus(@PathVariable("transactionId") String transactionId) {
+        try {
+            return ResponseEntity.ok(Map.of(
+                    "transactionId", transactionId,
+                    "status", transactionService.getTransactionStatus(transactionId)
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Transaction not found: " + transactionId);
+        }
+    }
+
     @GetMapping("/{transactionId}")
     public ResponseEntity<?> getTransactionDetails(@PathVariable("transactionId") String transactionId) {
         try {
@@ -0,0 +1,205 @@
+package com.example.fintech.transactionservice.dtx;
+
+import com.example.fintech.common.entity.DistributedTransaction;
+import com.example.fintech.common.enums.DistributedTransactionStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durable state for distributed transactions (tables distributed_transactions /
+ * distributed_transaction_log).
+ *
+ * Every status transition is queued and group-committed by one writer thread: a batch upserts
+ * the current state rows and appends the transition records in a single transaction. Each
+ * returned future completes once its transition is committed.
+ */
+@Component
+public class DistributedTransactionLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedTransactionLog.class);
+
+    // 尚未结束的状态，恢复时需要继续推进
+    public static final List<DistributedTransactionStatus> IN_DOUBT = List.of(
+            DistributedTransactionStatus.INITATED,
+            DistributedTransactionStatus.PREPARING,
+            DistributedTransactionStatus.PREPARED,
+            DistributedTransactionStatus.COMMITTING,
+            DistributedTransactionStatus.ABORTING);
+
+    private static final String UPSERT_STATE =
+            "INSERT INTO distributed_transactions (transaction_id, from_account_number, to_account_number, amount, " +
+                    "status, metadata, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE status = VALUES(status), metadata = VALUES(metadata), " +
+                    "updated_at = VALUES(updated_at)";
+    private static final String INSERT_TRANSITION =
+            "INSERT INTO distributed_transaction_log (transaction_id, status, metadata, created_at) VALUES (?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${dtx.log.batch-size:500}")
+    private int batchSize;
+
+    private final BlockingQueue<Transition> queue = new LinkedBlockingQueue<>();
+    private TransactionTemplate transactionTemplate;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder records = new LongAdder();
+
+    // 入队时对事务状态做快照，之后的修改不影响本条记录
+    private record Transition(String transactionId, String fromAccount, String toAccount, BigDecimal amount,
+                              String status, String metadata, Timestamp at, CompletableFuture<Void> done) {
+    }
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        writer = new Thread(this::writeLoop, "dtx-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Appends the transaction's current status. The future completes once it is durable.
+     */
+    public CompletableFuture<Void> append(DistributedTransaction dtx) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (!running) {
+            done.completeExceptionally(new IllegalStateException("Distributed transaction log is stopped"));
+            return done;
+        }
+        String metadata = dtx.getMetadata();
+        if (metadata != null && metadata.length() > 1000) {
+            metadata = metadata.substring(0, 1000);
+        }
+        queue.add(new Transition(dtx.getTransactionId(), dtx.getFromAccountNumber(), dtx.getToAccountNumber(),
+                dtx.getAmount(), dtx.getStatus().name(), metadata, Timestamp.valueOf(LocalDateTime.now()), done));
+        return done;
+    }
+
+    /**
+     * Claims in-doubt transactions that have not been touched since the cutoff. The conditional
+     * update makes sure only one coordinator instance re-drives each transaction.
+     */
+    public List<DistributedTransaction> claimInDoubt(LocalDateTime cutoff) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("statuses", IN_DOUBT.stream().map(Enum::name).toList())
+                .addValue("cutoff", Timestamp.valueOf(cutoff));
+        List<DistributedTransaction> candidates = namedJdbcTemplate.query(
+                "SELECT transaction_id, from_account_number, to_account_number, amount, status, metadata " +
+                        "FROM distributed_transactions WHERE status IN (:statuses) AND updated_at < :cutoff",
+                params,
+                (rs, rowNum) -> {
+                    DistributedTransaction dtx = new DistributedTransaction();
+                    dtx.setTransactionId(rs.getString("transaction_id"));
+                    dtx.setFromAccountNumber(rs.getString("from_account_number"));
+                    dtx.setToAccountNumber(rs.getString("to_account_number"));
+                    dtx.setAmount(rs.getBigDecimal("amount"));
+                    dtx.setStatus(DistributedTransactionStatus.valueOf(rs.getString("status")));
+                    dtx.setMetadata(rs.getString("metadata"));
+                    return dtx;
+                });
+
+        List<DistributedTransaction> claimed = new ArrayList<>();
+        for (DistributedTransaction dtx : candidates) {
+            int updated = jdbcTemplate.update(
+                    "UPDATE distributed_transactions SET updated_at = ? " +
+                            "WHERE transaction_id = ? AND status = ? AND updated_at < ?",
+                    Timestamp.valueOf(LocalDateTime.now()), dtx.getTransactionId(), dtx.getStatus().name(),
+                    Timestamp.valueOf(cutoff));
+            if (updated == 1) {
+                claimed.add(dtx);
+            }
+        }
+        return claimed;
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    private void writeLoop() {
+        List<Transition> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Transition first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Transition> batch) {
+        List<Object[]> states = new ArrayList<>(batch.size());
+        List<Object[]> transitions = new ArrayList<>(batch.size());
+        for (Transition t : batch) {
+            // 同一事务的多次转换按入队顺序执行，最后一次覆盖状态行
+            states.add(new Object[]{t.transactionId(), t.fromAccount(), t.toAccount(), t.amount(),
+                    t.status(), t.metadata(), t.at(), t.at()});
+            transitions.add(new Object[]{t.transactionId(), t.status(), t.metadata(), t.at()});
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(UPSERT_STATE, states);
+                jdbcTemplate.batchUpdate(INSERT_TRANSITION, transitions);
+            });
+        } catch (Exception e) {
+            logger.error("Failed to write {} distributed transaction transitions: {}", batch.size(), e.getMessage());
+            batch.forEach(t -> t.done().completeExceptionally(e));
+            return;
+        }
+        batches.increment();
+        records.add(batch.size());
+        batch.forEach(t -> t.done().complete(null));
+    }
+}
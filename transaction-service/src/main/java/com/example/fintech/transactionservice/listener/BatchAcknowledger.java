@@ -0,0 +1,83 @@
+package com.example.fintech.transactionservice.listener;
+
+import com.example.fintech.common.dedupe.MessageDeduplicator;
+import com.example.fintech.common.dedupe.MessageKeys;
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Decodes and handles a consumer batch one message at a time, then settles it with as few frames
+ * as possible: every failed message is nacked on its own, and the rest of the batch is acked with
+ * a single multiple-ack on the highest successful delivery tag. Messages already processed from
+ * the same queue, including an earlier copy in the same batch, are acked without calling the
+ * handler when deduplication is enabled.
+ */
+@Component
+public class BatchAcknowledger {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchAcknowledger.class);
+
+    @Autowired
+    private MessageConverter messageConverter;
+
+    @Autowired(required = false)
+    private MessageDeduplicator deduplicator;
+
+    // false: 失败消息进入队列配置的死信交换机；true: 重新入队
+    @Value("${transaction.listener.requeue-failed:false}")
+    private boolean requeueFailed;
+
+    /**
+     * @return the number of messages that failed and were nacked
+     */
+    public <T> int process(List<Message> messages, Channel channel, Class<T> type, Consumer<T> handler)
+            throws IOException {
+        long lastAckTag = -1;
+        int failed = 0;
+        String queue = messages.isEmpty() ? null : messages.get(0).getMessageProperties().getConsumerQueue();
+        boolean dedupe = deduplicator != null && deduplicator.applies(queue);
+        // 整批一次查出已处理过的键；批内重复的消息只处理成功的第一条
+        Set<String> alreadyProcessed = dedupe ? deduplicator.findProcessed(queue, messages) : Set.of();
+        Set<String> processedKeys = new LinkedHashSet<>();
+        for (Message message : messages) {
+            long tag = message.getMessageProperties().getDeliveryTag();
+            String key = dedupe ? MessageKeys.of(message) : null;
+            try {
+                if (key != null && (alreadyProcessed.contains(key) || processedKeys.contains(key))) {
+                    logger.info("Skipping duplicate message {} on {}", key, queue);
+                } else {
+                    handler.accept(type.cast(messageConverter.fromMessage(message)));
+                    if (key != null) {
+                        processedKeys.add(key);
+                    }
+                }
+                lastAckTag = tag;
+            } catch (Exception e) {
+                failed++;
+                logger.error("Failed to handle message {} from {}: {}", message.getMessageProperties().getMessageId(),
+                        message.getMessageProperties().getConsumerQueue(), e.getMessage());
+                channel.basicNack(tag, false, requeueFailed);
+            }
+        }
+        if (!processedKeys.isEmpty()) {
+            deduplicator.markProcessed(queue, processedKeys);
+        }
+        // 失败的消息已经单独 nack，multiple ack 只会确认剩下的未确认消息
+        if (lastAckTag >= 0) {
+            channel.basicAck(lastAckTag, true);
+        }
+        return failed;
+    }
+}
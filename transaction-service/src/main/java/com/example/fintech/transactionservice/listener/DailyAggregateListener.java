@@ -0,0 +1,29 @@
+package com.example.fintech.transactionservice.listener;
+
+import com.example.fintech.common.config.RabbitMQConfig;
+import com.example.fintech.common.event.TransactionEvent;
+import com.example.fintech.transactionservice.service.DailyAggregateService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class DailyAggregateListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(DailyAggregateListener.class);
+
+    @Autowired
+    private DailyAggregateService dailyAggregateService;
+
+    // 整批在一个数据库事务中处理，失败时整批重新投递
+    @RabbitListener(queues = RabbitMQConfig.TRANSACTION_AGGREGATE_QUEUE,
+            containerFactory = "aggregateListenerContainerFactory")
+    public void handleTransactionEvents(List<TransactionEvent> events) {
+        int applied = dailyAggregateService.apply(events);
+        logger.debug("Aggregated {} of {} transaction events", applied, events.size());
+    }
+}
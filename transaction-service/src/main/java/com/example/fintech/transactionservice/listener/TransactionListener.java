@@ -3,17 +3,37 @@ package com.example.fintech.transactionservice.listener;
 import com.example.fintech.common.config.RabbitMQConfig;
 import com.example.fintech.common.event.AccountBalanceEvent;
 import com.example.fintech.common.event.TransactionEvent;
+import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.List;
+
 @Component
 public class TransactionListener {
 
     private static final Logger logger = LoggerFactory.getLogger(TransactionListener.class);
 
-    @RabbitListener(queues = RabbitMQConfig.TRANSACTION_QUEUE)
+    @Autowired
+    private BatchAcknowledger batchAcknowledger;
+
+    @RabbitListener(queues = RabbitMQConfig.TRANSACTION_QUEUE,
+            containerFactory = "transactionBatchListenerContainerFactory")
+    public void handleTransactionEvents(List<Message> messages, Channel channel) throws IOException {
+        batchAcknowledger.process(messages, channel, TransactionEvent.class, this::handleTransactionEvent);
+    }
+
+    @RabbitListener(queues = RabbitMQConfig.ACCOUNT_BALANCE_QUEUE,
+            containerFactory = "balanceBatchListenerContainerFactory")
+    public void handleAccountBalanceEvents(List<Message> messages, Channel channel) throws IOException {
+        batchAcknowledger.process(messages, channel, AccountBalanceEvent.class, this::handleAccountBalanceEvent);
+    }
+
     public void handleTransactionEvent(TransactionEvent event) {
         logger.info("=== Processing Transaction Event ===");
         logger.info("Transaction ID: {}", event.getTransactionId());
@@ -29,7 +49,6 @@ public class TransactionListener {
         logger.info("Transaction event processed successfully");
     }
 
-    @RabbitListener(queues = RabbitMQConfig.ACCOUNT_BALANCE_QUEUE)
     public void handleAccountBalanceEvent(AccountBalanceEvent event) {
         logger.info("=== Processing Account Balance Event ===");
         logger.info("Account: {}", event.getAccountNumber());
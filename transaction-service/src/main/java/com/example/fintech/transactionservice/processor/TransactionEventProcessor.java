@@ -2,6 +2,8 @@ package com.example.fintech.transactionservice.processor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.rabbitmq.client.Channel;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -9,7 +11,9 @@ import com.example.fintech.common.config.RabbitMQConfig;
 import com.example.fintech.common.event.TransactionEvent;
 import com.example.fintech.transactionservice.repository.TransactionRepository;
 import com.example.fintech.common.service.EventPublisher;
+import com.example.fintech.transactionservice.listener.BatchAcknowledger;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -28,7 +32,15 @@ public class TransactionEventProcessor {
     @Autowired
     private EventPublisher eventPublisher;
 
-    @RabbitListener(queues = RabbitMQConfig.TRANSACTION_QUEUE)
+    @Autowired
+    private BatchAcknowledger batchAcknowledger;
+
+    @RabbitListener(queues = RabbitMQConfig.TRANSACTION_QUEUE,
+            containerFactory = "transactionBatchListenerContainerFactory")
+    public void processTransactionEvents(List<Message> messages, Channel channel) throws IOException {
+        batchAcknowledger.process(messages, channel, TransactionEvent.class, this::processTransactionEvent);
+    }
+
     public void processTransactionEvent(TransactionEvent event) {
         logger.info("processing transaction event:{}", event.getTransactionId());
 
@@ -47,6 +59,8 @@ public class TransactionEventProcessor {
         } catch (Exception e) {
             logger.error("Error processing transavtion: {}", event.getTransactionId());
             handleTransactionProcessingError(event, e);
+            // 交给批量确认逐条 nack，进入死信队列
+            throw e;
         }
     }
 
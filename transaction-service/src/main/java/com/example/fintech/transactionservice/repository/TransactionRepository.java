@@ -1,6 +1,8 @@
 package com.example.fintech.transactionservice.repository;
 
+import com.example.fintech.common.dto.TransactionSummary;
 import com.example.fintech.common.entity.Transaction;
+import com.example.fintech.common.enums.TransactionStatus;
 import com.example.fintech.common.enums.TransactionType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -18,16 +20,42 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
 
     Optional<Transaction> findByTransactionId(String transactionId);
 
-    @Query("SELECT t FROM Transaction t WHERE t.fromAccount.id = :accountId OR t.toAccount.id = :accountId ORDER BY t.createdAt DESC")
-    Page<Transaction> findByAccountId(@Param("accountId") Long accountId, Pageable pageable);
-
-    @Query("SELECT t FROM Transaction t WHERE (t.fromAccount.id = :accountId OR t.toAccount.id = :accountId) AND t.type = :type ORDER BY t.createdAt DESC")
-    List<Transaction> findByAccountIdAndType(@Param("accountId") Long accountId, @Param("type") TransactionType type);
-
-    @Query("SELECT t FROM Transaction t WHERE (t.fromAccount.id = :accountId OR t.toAccount.id = :accountId) AND t.createdAt BETWEEN :startDate AND :endDate ORDER BY t.createdAt DESC")
-    List<Transaction> findByAccountIdAndDateRange(@Param("accountId") Long accountId,
-                                                  @Param("startDate") LocalDateTime startDate,
-                                                  @Param("endDate") LocalDateTime endDate);
+    @Query("SELECT t.status FROM Transaction t WHERE t.transactionId = :transactionId")
+    Optional<TransactionStatus> findStatusByTransactionId(@Param("transactionId") String transactionId);
+
+    String SUMMARY = "SELECT new com.example.fintech.common.dto.TransactionSummary(" +
+            "t.id, t.transactionId, t.type, t.status, t.amount, t.description, " +
+            "fa.accountNumber, ta.accountNumber, t.createdAt) " +
+            "FROM Transaction t LEFT JOIN t.fromAccount fa LEFT JOIN t.toAccount ta ";
+
+    @Query(value = SUMMARY + "WHERE t.fromAccount.id = :accountId OR t.toAccount.id = :accountId ORDER BY t.createdAt DESC",
+            countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.fromAccount.id = :accountId OR t.toAccount.id = :accountId")
+    Page<TransactionSummary> findByAccountId(@Param("accountId") Long accountId, Pageable pageable);
+
+    // 游标分页按方向各查一次，分别命中 (账户, created_at, id) 索引，由调用方合并
+    @Query(SUMMARY + "WHERE t.fromAccount.id = :accountId " +
+            "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionSummary> findSentBefore(@Param("accountId") Long accountId,
+                                            @Param("createdAt") LocalDateTime createdAt,
+                                            @Param("id") Long id,
+                                            Pageable pageable);
+
+    @Query(SUMMARY + "WHERE t.toAccount.id = :accountId " +
+            "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TransactionSummary> findReceivedBefore(@Param("accountId") Long accountId,
+                                                @Param("createdAt") LocalDateTime createdAt,
+                                                @Param("id") Long id,
+                                                Pageable pageable);
+
+    @Query(SUMMARY + "WHERE (t.fromAccount.id = :accountId OR t.toAccount.id = :accountId) AND t.type = :type ORDER BY t.createdAt DESC")
+    List<TransactionSummary> findByAccountIdAndType(@Param("accountId") Long accountId, @Param("type") TransactionType type);
+
+    @Query(SUMMARY + "WHERE (t.fromAccount.id = :accountId OR t.toAccount.id = :accountId) AND t.createdAt BETWEEN :startDate AND :endDate ORDER BY t.createdAt DESC")
+    List<TransactionSummary> findByAccountIdAndDateRange(@Param("accountId") Long accountId,
+                                                         @Param("startDate") LocalDateTime startDate,
+                                                         @Param("endDate") LocalDateTime endDate);
 
     boolean existsByTransactionId(String transactionId);
 }
@@ -0,0 +1,207 @@
+package com.example.fintech.transactionservice.service;
+
+import com.example.fintech.common.enums.TransactionStatus;
+import com.example.fintech.common.enums.TransactionType;
+import com.example.fintech.common.event.TransactionEvent;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains daily_account_aggregates: per account, day and transaction type, the count, debit
+ * and credit totals and the opening/closing balance.
+ *
+ * Batches of COMPLETED transaction events are folded in memory and applied with one batched
+ * upsert. Each transaction is stamped with aggregated_at in the same database transaction, so
+ * redelivered or duplicated events are counted once.
+ */
+@Service
+public class DailyAggregateService {
+
+    private static final String UPSERT_AGGREGATE =
+            "INSERT INTO daily_account_aggregates (account_number, agg_date, transaction_type, txn_count, " +
+                    "debit_total, credit_total, opening_balance, closing_balance, first_event_at, last_event_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                    "txn_count = txn_count + VALUES(txn_count), " +
+                    "debit_total = debit_total + VALUES(debit_total), " +
+                    "credit_total = credit_total + VALUES(credit_total), " +
+                    // MySQL 按顺序赋值，必须先比较再更新时间戳
+                    "opening_balance = IF(VALUES(first_event_at) < first_event_at, " +
+                    "COALESCE(VALUES(opening_balance), opening_balance), opening_balance), " +
+                    "first_event_at = LEAST(first_event_at, VALUES(first_event_at)), " +
+                    "closing_balance = IF(VALUES(last_event_at) >= last_event_at, " +
+                    "COALESCE(VALUES(closing_balance), closing_balance), closing_balance), " +
+                    "last_event_at = GREATEST(last_event_at, VALUES(last_event_at))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private record Key(String accountNumber, LocalDate day, TransactionType type) {
+    }
+
+    private static class Bucket {
+        long count;
+        BigDecimal debit = BigDecimal.ZERO;
+        BigDecimal credit = BigDecimal.ZERO;
+        BigDecimal opening;
+        BigDecimal closing;
+        LocalDateTime firstAt;
+        LocalDateTime lastAt;
+
+        void add(BigDecimal debitAmount, BigDecimal creditAmount, BigDecimal before, BigDecimal after,
+                 LocalDateTime at) {
+            count++;
+            debit = debit.add(debitAmount);
+            credit = credit.add(creditAmount);
+            if (firstAt == null || at.isBefore(firstAt)) {
+                firstAt = at;
+                opening = before;
+            }
+            if (lastAt == null || !at.isBefore(lastAt)) {
+                lastAt = at;
+                closing = after;
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Applies a batch of transaction events. Returns the number of transactions newly counted.
+     */
+    public int apply(List<TransactionEvent> events) {
+        List<TransactionEvent> completed = events.stream()
+                .filter(e -> TransactionStatus.COMPLETED.name().equals(e.getStatus()) && e.getTimestamp() != null)
+                .toList();
+        if (completed.isEmpty()) {
+            return 0;
+        }
+
+        return transactionTemplate.execute(status -> {
+            Set<String> fresh = claimUnaggregated(completed.stream().map(TransactionEvent::getTransactionId).toList());
+            if (fresh.isEmpty()) {
+                return 0;
+            }
+
+            Map<Key, Bucket> buckets = new LinkedHashMap<>();
+            Set<String> applied = new HashSet<>();
+            for (TransactionEvent event : completed) {
+                if (!fresh.contains(event.getTransactionId()) || !applied.add(event.getTransactionId())) {
+                    continue;
+                }
+                LocalDate day = event.getTimestamp().toLocalDate();
+                TransactionType type = TransactionType.valueOf(event.getTransactionType());
+                BigDecimal amount = event.getAmount();
+                if (event.getFromAccount() != null) {
+                    BigDecimal before = event.getFromBalanceBefore();
+                    buckets.computeIfAbsent(new Key(event.getFromAccount(), day, type), k -> new Bucket())
+                            .add(amount, BigDecimal.ZERO, before, before != null ? before.subtract(amount) : null,
+                                    event.getTimestamp());
+                }
+                if (event.getToAccount() != null) {
+                    BigDecimal before = event.getToBalanceBefore();
+                    buckets.computeIfAbsent(new Key(event.getToAccount(), day, type), k -> new Bucket())
+                            .add(BigDecimal.ZERO, amount, before, before != null ? before.add(amount) : null,
+                                    event.getTimestamp());
+                }
+            }
+
+            List<Object[]> args = new ArrayList<>(buckets.size());
+            buckets.forEach((key, bucket) -> args.add(new Object[]{
+                    key.accountNumber(), Date.valueOf(key.day()), key.type().name(), bucket.count,
+                    bucket.debit, bucket.credit, bucket.opening, bucket.closing,
+                    Timestamp.valueOf(bucket.firstAt), Timestamp.valueOf(bucket.lastAt)}));
+            jdbcTemplate.batchUpdate(UPSERT_AGGREGATE, args);
+            return applied.size();
+        });
+    }
+
+    /**
+     * Totals per transaction type for a date range, plus the balance before the first and after
+     * the last transaction in the range. Reads at most one row per day and type.
+     */
+    public Map<String, Object> summarize(String accountNumber, LocalDate start, LocalDate end) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("accountNumber", accountNumber);
+        summary.put("from", start);
+        summary.put("to", end);
+        summary.put("openingBalance", boundaryBalance(accountNumber, start, end, true));
+        summary.put("closingBalance", boundaryBalance(accountNumber, start, end, false));
+        summary.put("byType", jdbcTemplate.queryForList(
+                "SELECT transaction_type AS type, SUM(txn_count) AS count, SUM(debit_total) AS debitTotal, " +
+                        "SUM(credit_total) AS creditTotal FROM daily_account_aggregates " +
+                        "WHERE account_number = ? AND agg_date BETWEEN ? AND ? GROUP BY transaction_type",
+                accountNumber, Date.valueOf(start), Date.valueOf(end)));
+        return summary;
+    }
+
+    /**
+     * Year summary with a per-month, per-type breakdown (at most 12 rows per type).
+     */
+    public Map<String, Object> summarizeYear(String accountNumber, int year) {
+        LocalDate start = LocalDate.of(year, 1, 1);
+        LocalDate end = LocalDate.of(year, 12, 31);
+        Map<String, Object> summary = summarize(accountNumber, start, end);
+        summary.put("byMonth", jdbcTemplate.queryForList(
+                "SELECT MONTH(agg_date) AS month, transaction_type AS type, SUM(txn_count) AS count, " +
+                        "SUM(debit_total) AS debitTotal, SUM(credit_total) AS creditTotal " +
+                        "FROM daily_account_aggregates WHERE account_number = ? AND agg_date BETWEEN ? AND ? " +
+                        "GROUP BY MONTH(agg_date), transaction_type ORDER BY month",
+                accountNumber, Date.valueOf(start), Date.valueOf(end)));
+        return summary;
+    }
+
+    private BigDecimal boundaryBalance(String accountNumber, LocalDate start, LocalDate end, boolean opening) {
+        String sql = opening
+                ? "SELECT opening_balance FROM daily_account_aggregates WHERE account_number = ? " +
+                "AND agg_date BETWEEN ? AND ? ORDER BY first_event_at LIMIT 1"
+                : "SELECT closing_balance FROM daily_account_aggregates WHERE account_number = ? " +
+                "AND agg_date BETWEEN ? AND ? ORDER BY last_event_at DESC LIMIT 1";
+        List<BigDecimal> result = jdbcTemplate.queryForList(sql, BigDecimal.class,
+                accountNumber, Date.valueOf(start), Date.valueOf(end));
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    // 锁住尚未计入汇总的交易并打上标记，重复事件在这里被过滤掉
+    private Set<String> claimUnaggregated(List<String> transactionIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource().addValue("ids", transactionIds);
+        Set<String> fresh = new HashSet<>(namedJdbcTemplate.queryForList(
+                "SELECT transaction_id FROM transactions WHERE transaction_id IN (:ids) AND aggregated_at IS NULL " +
+                        "FOR UPDATE", params, String.class));
+        if (!fresh.isEmpty()) {
+            namedJdbcTemplate.update("UPDATE transactions SET aggregated_at = :now WHERE transaction_id IN (:ids)",
+                    new MapSqlParameterSource()
+                            .addValue("now", Timestamp.valueOf(LocalDateTime.now()))
+                            .addValue("ids", fresh));
+        }
+        return fresh;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.fintech.transactionservice.service;
+
+import com.example.fintech.common.enums.TransactionStatus;
+import com.example.fintech.common.event.TransactionEvent;
+import com.example.fintech.common.service.EventPublisher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Completes PENDING transactions off the request thread.
+ *
+ * createTransaction inserts the row and hands its event to this pipeline after commit. One
+ * consumer thread drains the queue in batches, flips the whole batch to COMPLETED with a single
+ * UPDATE and then publishes the COMPLETED events. Rows left PENDING by a crash or a full queue
+ * are picked up by a periodic sweep.
+ */
+@Component
+public class TransactionCompletionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionCompletionPipeline.class);
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private EventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${transaction.completion.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${transaction.completion.batch-size:200}")
+    private int batchSize;
+
+    // 超过该时长仍为 PENDING 的交易由扫描补齐
+    @Value("${transaction.completion.sweep-stale-seconds:30}")
+    private long sweepStaleSeconds;
+
+    @Value("${transaction.completion.sweep-interval-ms:10000}")
+    private long sweepIntervalMillis;
+
+    private BlockingQueue<TransactionEvent> queue;
+    private TransactionTemplate transactionTemplate;
+    private Thread consumer;
+    private volatile boolean running;
+    private long lastSweep;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        consumer = new Thread(this::consumeLoop, "transaction-completion");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        consumer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Queues the transaction once the surrounding database transaction commits, so the consumer
+     * never looks for a row that is not visible yet.
+     */
+    public void submitAfterCommit(TransactionEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(event);
+                }
+            });
+        } else {
+            submit(event);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        return Map.of(
+                "queueDepth", queue.size(),
+                "completed", completed.sum(),
+                "batches", batches.sum(),
+                "rejected", rejected.sum());
+    }
+
+    private void submit(TransactionEvent event) {
+        // 队列满时不阻塞请求线程，交给扫描兜底
+        if (!queue.offer(event)) {
+            rejected.increment();
+            logger.warn("Completion queue full, transaction {} left for the sweep", event.getTransactionId());
+        }
+    }
+
+    private void consumeLoop() {
+        List<TransactionEvent> batch = new ArrayList<>(batchSize);
+        lastSweep = System.currentTimeMillis();
+        while (running || !queue.isEmpty()) {
+            try {
+                TransactionEvent first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    complete(batch);
+                }
+                if (System.currentTimeMillis() - lastSweep >= sweepIntervalMillis) {
+                    lastSweep = System.currentTimeMillis();
+                    sweepStalePending();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Failed to complete {} transactions, leaving them for the sweep: {}",
+                        batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void complete(List<TransactionEvent> batch) {
+        List<String> ids = batch.stream().map(TransactionEvent::getTransactionId).toList();
+
+        // 先锁住仍为 PENDING 的行，只为本批真正完成的交易发送事件
+        Set<String> updated = transactionTemplate.execute(status -> {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("ids", ids)
+                    .addValue("pending", TransactionStatus.PENDING.name());
+            Set<String> pending = new HashSet<>(namedJdbcTemplate.queryForList(
+                    "SELECT transaction_id FROM transactions WHERE transaction_id IN (:ids) AND status = :pending " +
+                            "FOR UPDATE", params, String.class));
+            if (!pending.isEmpty()) {
+                namedJdbcTemplate.update(
+                        "UPDATE transactions SET status = :completed, updated_at = :now WHERE transaction_id IN (:ids)",
+                        new MapSqlParameterSource()
+                                .addValue("completed", TransactionStatus.COMPLETED.name())
+                                .addValue("now", Timestamp.valueOf(LocalDateTime.now()))
+                                .addValue("ids", pending));
+            }
+            // 在同一事务内发布，启用outbox时完成事件与状态变更一起提交
+            for (TransactionEvent event : batch) {
+                if (pending.contains(event.getTransactionId())) {
+                    event.setStatus(TransactionStatus.COMPLETED.name());
+                    event.setTimestamp(LocalDateTime.now());
+                    eventPublisher.publishTransactionEvent(event);
+                }
+            }
+            return pending;
+        });
+
+        batches.increment();
+        completed.add(updated.size());
+    }
+
+    private void sweepStalePending() {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("pending", TransactionStatus.PENDING.name())
+                .addValue("cutoff", Timestamp.valueOf(LocalDateTime.now().minusSeconds(sweepStaleSeconds)))
+                .addValue("limit", batchSize);
+        List<TransactionEvent> stale;
+        do {
+            stale = namedJdbcTemplate.query(
+                    "SELECT t.transaction_id, t.amount, t.type, t.description, " +
+                            "t.from_account_balance_before, t.to_account_balance_before, " +
+                            "fa.account_number AS from_account, ta.account_number AS to_account " +
+                            "FROM transactions t " +
+                            "LEFT JOIN accounts fa ON fa.id = t.from_account_id " +
+                            "LEFT JOIN accounts ta ON ta.id = t.to_account_id " +
+                            "WHERE t.status = :pending AND t.created_at < :cutoff ORDER BY t.id LIMIT :limit",
+                    params,
+                    (rs, rowNum) -> {
+                        TransactionEvent event = new TransactionEvent();
+                        event.setTransactionId(rs.getString("transaction_id"));
+                        event.setFromAccount(rs.getString("from_account"));
+                        event.setToAccount(rs.getString("to_account"));
+                        event.setAmount(rs.getBigDecimal("amount"));
+                        event.setTransactionType(rs.getString("type"));
+                        event.setDescription(rs.getString("description"));
+                        event.setFromBalanceBefore(rs.getBigDecimal("from_account_balance_before"));
+                        event.setToBalanceBefore(rs.getBigDecimal("to_account_balance_before"));
+                        return event;
+                    });
+            if (!stale.isEmpty()) {
+                logger.info("Completing {} stale pending transactions", stale.size());
+                complete(new ArrayList<>(stale));
+            }
+        } while (stale.size() == batchSize);
+    }
+}
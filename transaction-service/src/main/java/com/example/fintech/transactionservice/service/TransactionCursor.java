@@ -0,0 +1,40 @@
+package com.example.fintech.transactionservice.service;
+
+import com.example.fintech.common.dto.TransactionSummary;
+import com.example.fintech.common.exception.InvalidTransactionException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Position in a (createdAt DESC, id DESC) listing, encoded as an opaque base64url token.
+ */
+record TransactionCursor(LocalDateTime createdAt, long id) {
+
+    // 第一页从最大值开始向前查找
+    static final TransactionCursor FIRST = new TransactionCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    static TransactionCursor after(TransactionSummary transaction) {
+        return new TransactionCursor(transaction.getCreatedAt(), transaction.getId());
+    }
+
+    static TransactionCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new TransactionCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new InvalidTransactionException("Invalid cursor");
+        }
+    }
+
+    String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.fintech.transactionservice.service;
+
+import com.example.fintech.common.enums.TransactionType;
+import com.example.fintech.transactionservice.archive.TransactionTierRouter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams an account's transactions straight from a forward-only JDBC result set to the
+ * response, one row at a time, so memory use does not depend on the number of rows.
+ */
+@Service
+public class TransactionExportService {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final String[] COLUMNS = {
+            "transactionId", "type", "status", "amount", "description", "fromAccount", "toAccount", "createdAt"};
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTierRouter tierRouter;
+
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // MySQL 驱动只有在 fetchSize 为 Integer.MIN_VALUE 时才逐行流式读取，否则会把整个结果集读进内存
+        jdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+        streamingJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    public void export(Long accountId, LocalDateTime start, LocalDateTime end, TransactionType type,
+                       Format format, OutputStream out) throws IOException {
+        MapSqlParameterSource params = new MapSqlParameterSource().addValue("accountId", accountId);
+        StringBuilder filter = new StringBuilder();
+        if (start != null) {
+            filter.append(" AND t.created_at >= :start");
+            params.addValue("start", Timestamp.valueOf(start));
+        }
+        if (end != null) {
+            filter.append(" AND t.created_at <= :end");
+            params.addValue("end", Timestamp.valueOf(end));
+        }
+        if (type != null) {
+            filter.append(" AND t.type = :type");
+            params.addValue("type", type.name());
+        }
+
+        // 冷热两层放在同一条语句里读，归档任务同时搬迁数据也不会漏读或重复
+        List<String> branches = new ArrayList<>();
+        TransactionTierRouter.Tier tier = tierRouter.route(start, end);
+        if (tier != TransactionTierRouter.Tier.HOT) {
+            branches.addAll(accountBranches("transactions_archive", filter));
+        }
+        if (tier != TransactionTierRouter.Tier.COLD) {
+            branches.addAll(accountBranches("transactions", filter));
+        }
+        String sql = String.join(" UNION ALL ", branches) + " ORDER BY created_at, id";
+
+        if (format == Format.CSV) {
+            writeCsv(sql, params, out);
+        } else {
+            writeNdjson(sql, params, out);
+        }
+    }
+
+    // 两个方向分别走索引后 UNION ALL；收款分支排除自转账，避免重复
+    private static List<String> accountBranches(String table, CharSequence filter) {
+        String select = "SELECT t.id, t.transaction_id, t.type, t.status, t.amount, t.description, t.created_at, " +
+                "fa.account_number AS from_account, ta.account_number AS to_account " +
+                "FROM " + table + " t " +
+                "LEFT JOIN accounts fa ON fa.id = t.from_account_id " +
+                "LEFT JOIN accounts ta ON ta.id = t.to_account_id ";
+        return List.of(
+                "(" + select + "WHERE t.from_account_id = :accountId" + filter + ")",
+                "(" + select + "WHERE t.to_account_id = :accountId " +
+                        "AND (t.from_account_id IS NULL OR t.from_account_id <> :accountId)" + filter + ")");
+    }
+
+    private void writeNdjson(String sql, MapSqlParameterSource params, OutputStream out) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            streamingJdbcTemplate.query(sql, params, rs -> {
+                try {
+                    json.writeStartObject();
+                    json.writeStringField(COLUMNS[0], rs.getString("transaction_id"));
+                    json.writeStringField(COLUMNS[1], rs.getString("type"));
+                    json.writeStringField(COLUMNS[2], rs.getString("status"));
+                    json.writeNumberField(COLUMNS[3], rs.getBigDecimal("amount"));
+                    json.writeStringField(COLUMNS[4], rs.getString("description"));
+                    json.writeStringField(COLUMNS[5], rs.getString("from_account"));
+                    json.writeStringField(COLUMNS[6], rs.getString("to_account"));
+                    json.writeStringField(COLUMNS[7], createdAt(rs));
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private void writeCsv(String sql, MapSqlParameterSource params, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write(String.join(",", COLUMNS));
+        writer.write('\n');
+        streamingJdbcTemplate.query(sql, params, rs -> {
+            try {
+                writer.write(csv(rs.getString("transaction_id")));
+                writer.write(',');
+                writer.write(csv(rs.getString("type")));
+                writer.write(',');
+                writer.write(csv(rs.getString("status")));
+                writer.write(',');
+                writer.write(rs.getBigDecimal("amount").toPlainString());
+                writer.write(',');
+                writer.write(csv(rs.getString("description")));
+                writer.write(',');
+                writer.write(csv(rs.getString("from_account")));
+                writer.write(',');
+                writer.write(csv(rs.getString("to_account")));
+                writer.write(',');
+                writer.write(csv(createdAt(rs)));
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private static String createdAt(ResultSet rs) throws SQLException {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        return createdAt != null ? createdAt.toLocalDateTime().toString() : null;
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
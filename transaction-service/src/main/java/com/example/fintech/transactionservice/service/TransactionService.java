@@ -1,6 +1,9 @@
 package com.example.fintech.transactionservice.service;
 
+import com.example.fintech.common.dto.CursorPage;
+import com.example.fintech.common.dto.TransactionSummary;
 import com.example.fintech.common.entity.Transaction;
+import com.example.fintech.common.enums.TransactionStatus;
 import com.example.fintech.common.enums.TransactionType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -13,9 +16,11 @@ public interface TransactionService {
     Transaction createTransaction(Long fromAccountId, Long toAccountId,
                                   BigDecimal amount, TransactionType type, String description);
     Transaction getTransactionById(String transactionId);
-    Page<Transaction> getTransactionsByAccountId(Long accountId, Pageable pageable);
-    List<Transaction> getTransactionsByAccountAndType(Long accountId, TransactionType type);
-    List<Transaction> getTransactionsByDateRange(Long accountId, LocalDateTime startDate, LocalDateTime endDate);
+    TransactionStatus getTransactionStatus(String transactionId);
+    Page<TransactionSummary> getTransactionsByAccountId(Long accountId, Pageable pageable);
+    CursorPage<TransactionSummary> getTransactionsByAccountId(Long accountId, String cursor, int size);
+    List<TransactionSummary> getTransactionsByAccountAndType(Long accountId, TransactionType type);
+    List<TransactionSummary> getTransactionsByDateRange(Long accountId, LocalDateTime startDate, LocalDateTime endDate);
     String generateTransactionId();
 }
 
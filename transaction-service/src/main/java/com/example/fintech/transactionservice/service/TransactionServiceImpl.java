@@ -1,5 +1,7 @@
 package com.example.fintech.transactionservice.service;
 
+import com.example.fintech.common.dto.CursorPage;
+import com.example.fintech.common.dto.TransactionSummary;
 import com.example.fintech.common.entity.Account;
 import com.example.fintech.common.entity.Transaction;
 import com.example.fintech.common.enums.TransactionStatus;
@@ -8,19 +10,25 @@ import com.example.fintech.common.event.TransactionEvent;
 import com.example.fintech.common.exception.AccountNotFoundException;
 import com.example.fintech.common.exception.InvalidTransactionException;
 import com.example.fintech.common.service.EventPublisher;
+import com.example.fintech.common.service.TransactionIdGenerator;
+import com.example.fintech.transactionservice.archive.TransactionArchiveStore;
+import com.example.fintech.transactionservice.archive.TransactionTierRouter;
 import com.example.fintech.transactionservice.repository.AccountRepository;
 import com.example.fintech.transactionservice.repository.TransactionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Random;
+import java.util.Optional;
 
 
 @Service
@@ -36,6 +44,22 @@ public class TransactionServiceImpl implements TransactionService{
     @Autowired
     private EventPublisher eventPublisher;
 
+    @Autowired
+    private TransactionIdGenerator transactionIdGenerator;
+
+    @Autowired
+    private TransactionCompletionPipeline completionPipeline;
+
+    @Autowired
+    private TransactionTierRouter tierRouter;
+
+    @Autowired
+    private TransactionArchiveStore archiveStore;
+
+    // sync: 请求线程内完成；async: 只插入 PENDING 行，由完成流水线批量完成
+    @Value("${transaction.completion.mode:sync}")
+    private String completionMode;
+
     public Transaction createTransaction(Long fromAccountId, Long toAccountId,
                                          BigDecimal amount, TransactionType type, String description) {
 
@@ -58,16 +82,23 @@ public class TransactionServiceImpl implements TransactionService{
         // Create transaction with PENDING status initially
         Transaction transaction = createPendingTransaction(fromAccount, toAccount, amount, type, description);
 
+        if ("async".equalsIgnoreCase(completionMode)) {
+            Transaction savedTransaction = transactionRepository.save(transaction);
+            completionPipeline.submitAfterCommit(createTransactionEvent(savedTransaction));
+            return savedTransaction;
+        }
+
         try {
             // Save transaction first
             Transaction savedTransaction = transactionRepository.save(transaction);
 
-            // Publish transaction event for processing
-            publishTransactionCreatedEvent(savedTransaction);
-
             // Update status to COMPLETED (in real-world, this would be async)
             savedTransaction.setStatus(TransactionStatus.COMPLETED);
-            return transactionRepository.save(savedTransaction);
+            savedTransaction = transactionRepository.save(savedTransaction);
+
+            // 事件携带最终状态，下游（如日汇总）只处理已完成的交易
+            publishTransactionCreatedEvent(savedTransaction);
+            return savedTransaction;
 
         } catch (Exception e) {
             transaction.setStatus(TransactionStatus.FAILED);
@@ -119,6 +150,10 @@ public class TransactionServiceImpl implements TransactionService{
     }
 
     private void publishTransactionCreatedEvent(Transaction transaction) {
+        eventPublisher.publishTransactionEvent(createTransactionEvent(transaction));
+    }
+
+    private TransactionEvent createTransactionEvent(Transaction transaction) {
         TransactionEvent event = new TransactionEvent();
         event.setTransactionId(transaction.getTransactionId());
         event.setFromAccount(transaction.getFromAccount() != null ?
@@ -130,8 +165,9 @@ public class TransactionServiceImpl implements TransactionService{
         event.setStatus(transaction.getStatus().toString());
         event.setTimestamp(LocalDateTime.now());
         event.setDescription(transaction.getDescription());
-
-        eventPublisher.publishTransactionEvent(event);
+        event.setFromBalanceBefore(transaction.getFromAccountBalanceBefore());
+        event.setToBalanceBefore(transaction.getToAccountBalanceBefore());
+        return event;
     }
 
     private void publishTransactionFailedEvent(Transaction transaction, String errorMessage) {
@@ -152,29 +188,102 @@ public class TransactionServiceImpl implements TransactionService{
     }
 
     @Override
-    public Page<Transaction> getTransactionsByAccountId(Long accountId, Pageable pageable){
+    @Transactional(readOnly = true)
+    public TransactionStatus getTransactionStatus(String transactionId) {
+        return transactionRepository.findStatusByTransactionId(transactionId)
+                .or(() -> archiveStore.findStatusByTransactionId(transactionId))
+                .orElseThrow(() -> new RuntimeException("Transaction not found."));
+    }
+
+    // 偏移分页只读热表；更早的历史通过游标分页或按日期查询访问
+    @Override
+    @Transactional(readOnly = true)
+    public Page<TransactionSummary> getTransactionsByAccountId(Long accountId, Pageable pageable){
         return transactionRepository.findByAccountId(accountId, pageable);
     }
 
     @Override
-    public List<Transaction> getTransactionsByAccountAndType(Long accountId, TransactionType type) {
-        return transactionRepository.findByAccountIdAndType(accountId, type);
+    @Transactional(readOnly = true)
+    public CursorPage<TransactionSummary> getTransactionsByAccountId(Long accountId, String cursor, int size) {
+        TransactionCursor position = TransactionCursor.decode(cursor);
+        // 多取一条用于判断是否还有下一页
+        Pageable limit = PageRequest.ofSize(size + 1);
+        List<TransactionSummary> sent = transactionRepository.findSentBefore(
+                accountId, position.createdAt(), position.id(), limit);
+        List<TransactionSummary> received = transactionRepository.findReceivedBefore(
+                accountId, position.createdAt(), position.id(), limit);
+
+        List<TransactionSummary> rows = mergeNewestFirst(sent, received, size + 1);
+
+        // 热表凑不满一页、或这一页已经进入归档边界时，再从冷表补齐
+        Optional<LocalDateTime> watermark = archiveStore.getWatermark();
+        boolean readCold = watermark.isPresent()
+                ? needsColdRows(rows, size, watermark.get())
+                : archiveStore.hasColdRows();
+        if (readCold) {
+            List<TransactionSummary> cold = archiveStore.findByAccountIdBefore(
+                    accountId, position.createdAt(), position.id(), size + 1);
+            rows = mergeNewestFirst(rows, cold, size + 1);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<TransactionSummary> items = hasMore ? rows.subList(0, size) : rows;
+        String nextCursor = hasMore ? TransactionCursor.after(items.get(items.size() - 1)).encode() : null;
+        return new CursorPage<>(items, nextCursor, hasMore);
+    }
+
+    private boolean needsColdRows(List<TransactionSummary> hotRows, int size, LocalDateTime watermark) {
+        return hotRows.size() <= size
+                || hotRows.get(hotRows.size() - 1).getCreatedAt().isBefore(TransactionTierRouter.hotFrontier(watermark));
+    }
+
+    // 两个有序列表归并；自己转给自己的交易会在两边各出现一次，按 id 去重
+    private List<TransactionSummary> mergeNewestFirst(List<TransactionSummary> a, List<TransactionSummary> b, int limit) {
+        Comparator<TransactionSummary> newestFirst = Comparator.comparing(TransactionSummary::getCreatedAt)
+                .thenComparing(TransactionSummary::getId).reversed();
+        List<TransactionSummary> merged = new ArrayList<>(limit);
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < a.size() || j < b.size())) {
+            TransactionSummary next;
+            if (j >= b.size() || (i < a.size() && newestFirst.compare(a.get(i), b.get(j)) <= 0)) {
+                next = a.get(i++);
+            } else {
+                next = b.get(j++);
+            }
+            if (merged.isEmpty() || !merged.get(merged.size() - 1).getId().equals(next.getId())) {
+                merged.add(next);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TransactionSummary> getTransactionsByAccountAndType(Long accountId, TransactionType type) {
+        TransactionTierRouter.Tier tier = tierRouter.route(null, null);
+        // 先读热表再读冷表：期间被归档的行两边都会读到，归并时去重，不会漏掉
+        List<TransactionSummary> hot = tier != TransactionTierRouter.Tier.COLD
+                ? transactionRepository.findByAccountIdAndType(accountId, type) : List.of();
+        List<TransactionSummary> cold = tier != TransactionTierRouter.Tier.HOT
+                ? archiveStore.findByAccountIdAndType(accountId, type) : List.of();
+        return mergeNewestFirst(hot, cold, hot.size() + cold.size());
     }
 
     @Override
-    public List<Transaction> getTransactionsByDateRange(Long accountId, LocalDateTime startDate, LocalDateTime endDate){
-        return transactionRepository.findByAccountIdAndDateRange(accountId, startDate, endDate);
+    @Transactional(readOnly = true)
+    public List<TransactionSummary> getTransactionsByDateRange(Long accountId, LocalDateTime startDate, LocalDateTime endDate){
+        TransactionTierRouter.Tier tier = tierRouter.route(startDate, endDate);
+        List<TransactionSummary> hot = tier != TransactionTierRouter.Tier.COLD
+                ? transactionRepository.findByAccountIdAndDateRange(accountId, startDate, endDate) : List.of();
+        List<TransactionSummary> cold = tier != TransactionTierRouter.Tier.HOT
+                ? archiveStore.findByAccountIdAndDateRange(accountId, startDate, endDate) : List.of();
+        return mergeNewestFirst(hot, cold, hot.size() + cold.size());
     }
 
     @Override
     public String generateTransactionId(){
-        String transactionId;
-        do {
-            String datePart = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-            String randomPart = String.format("%06d", new Random().nextInt(1000000));
-            transactionId = "TXN" + datePart + randomPart;
-        } while (transactionRepository.existsByTransactionId(transactionId));
-        return transactionId;
+        return transactionIdGenerator.nextTransactionId();
     }
 }
 
@@ -0,0 +1,93 @@
+package com.example.fintech.transactionservice.timer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedWheelTimerTest {
+
+    // 8 个槽、每槽 10ms：一圈 80ms，250ms 的任务要转过三圈多
+    private static final long TICK_MILLIS = 10;
+    private static final int TICKS_PER_WHEEL = 8;
+
+    private HashedWheelTimer timer;
+
+    @BeforeEach
+    void startTimer() {
+        timer = new HashedWheelTimer("wheel-test", TICK_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL, Runnable::run);
+    }
+
+    @AfterEach
+    void stopTimer() throws InterruptedException {
+        timer.stop();
+    }
+
+    @Test
+    void firesAfterSeveralRoundsButNotEarly() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long[] firedAt = new long[1];
+        long start = System.nanoTime();
+
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> {
+            firedAt[0] = System.nanoTime();
+            fired.countDown();
+        }, 250, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(firedAt[0] - start) >= 250);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    void cancelledTimeoutNeverFiresEvenOnceInABucket() throws InterruptedException {
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        CountDownLatch sentinel = new CountDownLatch(1);
+
+        HashedWheelTimer.Timeout cancelled = timer.schedule(() -> cancelledRan.set(true), 250, TimeUnit.MILLISECONDS);
+        // 落在同一个槽位、晚一圈的哨兵任务：它触发时被取消的任务早该到期
+        timer.schedule(sentinel::countDown, 250 + TICK_MILLIS * TICKS_PER_WHEEL, TimeUnit.MILLISECONDS);
+
+        // 等工作线程把任务搬进槽位后再取消，覆盖从链表摘除的路径
+        Thread.sleep(5 * TICK_MILLIS);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(1, timer.pendingTimeouts());
+
+        assertTrue(sentinel.await(2, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.get());
+        assertFalse(cancelled.isExpired());
+        assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    void cancelBeforeTransferIsHonoured() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        CountDownLatch sentinel = new CountDownLatch(1);
+
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> ran.set(true), 0, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        timer.schedule(sentinel::countDown, 3 * TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertTrue(sentinel.await(2, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void pastDeadlinesFireOnTheNextTick() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+
+        timer.schedule(fired::countDown, -TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(10 * TICK_MILLIS, TimeUnit.MILLISECONDS));
+    }
+}
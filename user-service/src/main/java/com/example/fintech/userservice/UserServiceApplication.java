@@ -14,7 +14,8 @@ import org.springframework.context.annotation.ComponentScan;
 @ComponentScan(basePackages = {
         "com.example.fintech.userservice",
         "com.example.fintech.common.service",
-        "com.example.fintech.common.config"
+        "com.example.fintech.common.config",
+        "com.example.fintech.common.dedupe"
 })
 @Import(RabbitMQConfig.class)
 public class UserServiceApplication {